@@ -0,0 +1,295 @@
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+// Actively rendered board: a render thread draws into a BufferStrategy at a fixed frame rate and
+// animates slides, merges and new tiles between the snapshots published by the game loop
+// Game state advances in fixed steps, independent of the frame rate; nothing is allocated per frame
+// apart from the Graphics object the BufferStrategy hands out
+public class ActiveBoardCanvas extends Canvas implements Runnable {
+    private static final long UPDATE_NANOS = 1_000_000_000L / 240; // Fixed animation step
+    private static final long MAX_CATCH_UP_NANOS = 250_000_000L; // Skip ahead after long stalls
+    private static final long SLIDE_NANOS = 100_000_000L; // Tiles travel to their new cell
+    private static final long POP_NANOS = 100_000_000L; // Then merged tiles pulse and the new tile grows
+    private static final int BORDER = 5;
+    private static final int STATS_FRAMES = 1024;
+    private static final long STATS_INTERVAL_NANOS = 5_000_000_000L;
+
+    private final int size;
+    private final long frameNanos;
+    private final Runnable fallback; // Run on the EDT if active rendering is not available
+    private final LatencyHistogram frameHistogram; // Every frame interval, for the metrics
+    private final TileSprites sprites = new TileSprites();
+    private volatile BoardSnapshot pending; // Latest snapshot from the game loop
+    private volatile boolean running;
+    private Thread thread;
+
+    // Animation state, only touched by the render thread
+    private BoardSnapshot current;
+    private final int[] motionFrom; // Tiles sliding this move: source cell, target cell and value
+    private final int[] motionTo;
+    private final int[] motionValue;
+    private int motionCount;
+    private final boolean[] merged; // Cells whose tile was formed by a merge this move
+    private boolean animating;
+    private long animationClock; // Nanoseconds since the move, advanced in fixed steps
+    private long accumulator; // Time not yet consumed by fixed steps, used to interpolate
+
+    // Frame time statistics, a ring of the most recent frames
+    private final long[] frameTimes = new long[STATS_FRAMES];
+    private final long[] sortedFrameTimes = new long[STATS_FRAMES];
+    private int frameIndex;
+    private int framesRecorded;
+    private long framesSinceReport;
+    private long lastReport;
+
+    public ActiveBoardCanvas(int size, int targetFps, LatencyHistogram frameHistogram, Runnable fallback) {
+        this.size = size;
+        this.frameHistogram = frameHistogram;
+        this.frameNanos = 1_000_000_000L / targetFps;
+        this.fallback = fallback;
+        this.motionFrom = new int[size * size];
+        this.motionTo = new int[size * size];
+        this.motionValue = new int[size * size];
+        this.merged = new boolean[size * size];
+        setIgnoreRepaint(true); // All painting happens on the render thread
+        setFocusable(false); // Keys must keep going to the frame's listener
+        setBackground(Color.GRAY);
+    }
+
+    // Called with every snapshot, the render thread picks up the newest one
+    public void show(BoardSnapshot snapshot) {
+        pending = snapshot;
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        running = true;
+        thread = new Thread(this, "board-renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        running = false; // The buffers die with the peer, so stop drawing first
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        super.removeNotify();
+    }
+
+    public void run() {
+        BufferStrategy strategy;
+        try {
+            createBufferStrategy(2);
+            strategy = getBufferStrategy();
+        } catch (Exception e) {
+            strategy = null;
+        }
+        if (strategy == null) {
+            System.err.println("Active rendering unavailable, falling back to passive painting");
+            EventQueue.invokeLater(fallback);
+            return;
+        }
+
+        long previous = System.nanoTime();
+        long nextFrame = previous;
+        lastReport = previous;
+        while (running) {
+            long now = System.nanoTime();
+            long elapsed = now - previous;
+            previous = now;
+            recordFrame(now, elapsed);
+
+            accumulator += Math.min(elapsed, MAX_CATCH_UP_NANOS);
+            while (accumulator >= UPDATE_NANOS) {
+                update();
+                accumulator -= UPDATE_NANOS;
+            }
+            render(strategy);
+
+            nextFrame += frameNanos;
+            long sleep = nextFrame - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            } else {
+                nextFrame = System.nanoTime(); // Running late, do not try to catch up on frames
+            }
+        }
+    }
+
+    // One fixed step: start animating a new snapshot or move the current animation along
+    private void update() {
+        BoardSnapshot snapshot = pending;
+        if (snapshot != current) {
+            current = snapshot;
+            animating = snapshot != null && snapshot.direction >= 0 && computeMotions(snapshot);
+            animationClock = 0;
+        } else if (animating) {
+            animationClock += UPDATE_NANOS;
+            if (animationClock >= SLIDE_NANOS + POP_NANOS) {
+                animating = false;
+            }
+        }
+    }
+
+    // Work out where each tile of the previous board went, line by line
+    // Tiles never change order within a line, so each tile of the new board is made of the next
+    // run of old tiles whose values add up to it; returns false if the boards do not line up
+    private boolean computeMotions(BoardSnapshot snapshot) {
+        motionCount = 0;
+        Arrays.fill(merged, false);
+        int direction = snapshot.direction;
+        for (int line = 0; line < size; line++) {
+            int source = 0;
+            for (int position = 0; position < size; position++) {
+                int to = cellAt(direction, line, position);
+                int value = snapshot.cells[to];
+                if (value == 0 || to == snapshot.spawnCell) {
+                    continue;
+                }
+                int total = 0;
+                int parts = 0;
+                while (total < value) {
+                    while (source < size && snapshot.before[cellAt(direction, line, source)] == 0) {
+                        source++;
+                    }
+                    if (source == size) {
+                        return false;
+                    }
+                    int from = cellAt(direction, line, source++);
+                    motionFrom[motionCount] = from;
+                    motionTo[motionCount] = to;
+                    motionValue[motionCount] = snapshot.before[from];
+                    motionCount++;
+                    total += snapshot.before[from];
+                    parts++;
+                }
+                if (total != value) {
+                    return false;
+                }
+                merged[to] = parts > 1;
+            }
+        }
+        return true;
+    }
+
+    // Cell index of the given position along a line, position 0 is the edge the tiles move towards
+    private int cellAt(int direction, int line, int position) {
+        switch (direction) {
+            case BitBoard.UP: return position * size + line;
+            case BitBoard.DOWN: return (size - 1 - position) * size + line;
+            case BitBoard.LEFT: return line * size + position;
+            default: return line * size + size - 1 - position;
+        }
+    }
+
+    private void render(BufferStrategy strategy) {
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    draw(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    private void draw(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        int cellWidth = (width - 2 * BORDER) / size;
+        int cellHeight = (height - 2 * BORDER) / size;
+        if (cellWidth <= 0 || cellHeight <= 0) {
+            return;
+        }
+        int originX = (width - size * cellWidth) / 2;
+        int originY = (height - size * cellHeight) / 2;
+        sprites.resize(cellWidth, cellHeight);
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, width, height);
+        Image empty = sprites.sprite(0, configuration);
+        for (int cell = 0; cell < size * size; cell++) {
+            g.drawImage(empty, originX + (cell % size) * cellWidth, originY + (cell / size) * cellHeight, null);
+        }
+        BoardSnapshot snapshot = current;
+        if (snapshot == null) {
+            return;
+        }
+
+        long clock = animationClock + accumulator; // Interpolate between fixed steps
+        if (animating && clock < SLIDE_NANOS) {
+            // Slide phase: old tiles on their way to their new cells
+            float t = (float) clock / SLIDE_NANOS;
+            t = t * (2 - t); // Ease out
+            for (int m = 0; m < motionCount; m++) {
+                int from = motionFrom[m];
+                int to = motionTo[m];
+                float x = (from % size) + ((to % size) - (from % size)) * t;
+                float y = (from / size) + ((to / size) - (from / size)) * t;
+                g.drawImage(sprites.sprite(motionValue[m], configuration),
+                        originX + Math.round(x * cellWidth), originY + Math.round(y * cellHeight), null);
+            }
+            return;
+        }
+
+        // Settled board, with merged tiles pulsing and the new tile growing while the animation ends
+        float pop = animating ? Math.min(1f, (float) (clock - SLIDE_NANOS) / POP_NANOS) : 1f;
+        for (int cell = 0; cell < size * size; cell++) {
+            int value = snapshot.cells[cell];
+            if (value == 0) {
+                continue;
+            }
+            float scale = 1f;
+            if (animating && cell == snapshot.spawnCell) {
+                scale = pop;
+            } else if (animating && merged[cell]) {
+                scale = 1f + 0.15f * (float) Math.sin(Math.PI * pop);
+            }
+            int w = Math.round(cellWidth * scale);
+            int h = Math.round(cellHeight * scale);
+            if (w > 0 && h > 0) {
+                int x = originX + (cell % size) * cellWidth + (cellWidth - w) / 2;
+                int y = originY + (cell / size) * cellHeight + (cellHeight - h) / 2;
+                g.drawImage(sprites.sprite(value, configuration), x, y, w, h, null);
+            }
+        }
+    }
+
+    // Keep the frame time and print min/avg/p99/max every few seconds
+    private void recordFrame(long now, long elapsed) {
+        frameHistogram.record(elapsed);
+        frameTimes[frameIndex] = elapsed;
+        frameIndex = (frameIndex + 1) % STATS_FRAMES;
+        framesRecorded = Math.min(framesRecorded + 1, STATS_FRAMES);
+        framesSinceReport++;
+        if (now - lastReport < STATS_INTERVAL_NANOS) {
+            return;
+        }
+        System.arraycopy(frameTimes, 0, sortedFrameTimes, 0, framesRecorded);
+        Arrays.sort(sortedFrameTimes, 0, framesRecorded);
+        long total = 0;
+        for (int i = 0; i < framesRecorded; i++) {
+            total += sortedFrameTimes[i];
+        }
+        System.out.printf("Render: %.1f fps, frame time ms min %.2f avg %.2f p99 %.2f max %.2f%n",
+                framesSinceReport * 1e9 / (now - lastReport),
+                sortedFrameTimes[0] / 1e6,
+                total / 1e6 / framesRecorded,
+                sortedFrameTimes[Math.min(framesRecorded - 1, framesRecorded * 99 / 100)] / 1e6,
+                sortedFrameTimes[framesRecorded - 1] / 1e6);
+        framesSinceReport = 0;
+        lastReport = now;
+    }
+}
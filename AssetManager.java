@@ -0,0 +1,114 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+
+// Loads images and other startup assets on background threads, in parallel, each one only once
+// Images are decoded up front and cached by path; callers get a CompletableFuture and can draw
+// without the image until it completes. Every load is timed for the startup report.
+// Scaled copies for a given size are made once on a loader thread and held softly, so the GC can
+// drop them when memory runs short; they are simply made again the next time they are asked for.
+public class AssetManager {
+    private final long startNanos; // Launch time, the report is relative to it
+    private final ExecutorService loader;
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> images = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SoftReference<CompletableFuture<BufferedImage>>> scaled = new ConcurrentHashMap<>(); // Keyed "path@WxH"
+    private final List<CompletableFuture<?>> started = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> loadNanos = new ConcurrentSkipListMap<>(); // Asset name to time spent loading it
+
+    public AssetManager(long startNanos) {
+        this.startNanos = startNanos;
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        loader = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "asset-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Decoded image at path, loaded on first request and shared after that
+    public CompletableFuture<BufferedImage> image(String path) {
+        return images.computeIfAbsent(path, p -> load(p, () -> readImage(p)));
+    }
+
+    // Image at path scaled to exactly width x height in the display's pixel format, so drawing it is a plain copy
+    public CompletableFuture<BufferedImage> scaledImage(String path, int width, int height, GraphicsConfiguration configuration) {
+        String key = path + '@' + width + 'x' + height;
+        SoftReference<CompletableFuture<BufferedImage>> reference = scaled.get(key);
+        CompletableFuture<BufferedImage> future = reference == null ? null : reference.get();
+        if (future == null) {
+            future = image(path).thenApplyAsync(source -> scale(source, width, height, configuration), loader);
+            scaled.values().removeIf(old -> old.get() == null); // Forget the sizes the GC already dropped
+            scaled.put(key, new SoftReference<>(future));
+        }
+        return future;
+    }
+
+    private static BufferedImage scale(BufferedImage source, int width, int height, GraphicsConfiguration configuration) {
+        int transparency = source.getColorModel().getTransparency();
+        BufferedImage image = configuration != null
+                ? configuration.createCompatibleImage(width, height, transparency)
+                : new BufferedImage(width, height, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return image;
+    }
+
+    // Run any loading task in the background; a failure is logged and completes the future exceptionally
+    public <T> CompletableFuture<T> load(String name, Callable<T> task) {
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                loadNanos.put(name, System.nanoTime() - start);
+            }
+        }, loader);
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                System.err.println("Could not load " + name + ": " + error.getCause());
+            }
+        });
+        started.add(future);
+        return future;
+    }
+
+    // Completes when everything requested so far has finished loading, whether it worked or not
+    public CompletableFuture<Void> allLoaded() {
+        return CompletableFuture.allOf(started.toArray(new CompletableFuture<?>[0])).handle((result, error) -> null);
+    }
+
+    public double millisSinceStart() {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+
+    // Load time of each asset so far, e.g. "menu.png 12.3 ms, highscores.log 4.0 ms"
+    public String timings() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> entry : loadNanos.entrySet()) {
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(entry.getKey()).append(String.format(" %.1f ms", entry.getValue() / 1e6));
+        }
+        return text.toString();
+    }
+
+    private static BufferedImage readImage(String path) throws IOException {
+        BufferedImage image = ImageIO.read(new File(path));
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + path);
+        }
+        return image;
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.*;
+import javax.sound.sampled.*;
+
+// Streaming audio: background music read a chunk at a time into a SourceDataLine, plus merge sounds
+// mixed into the same chunks. One low-priority thread does all of it with buffers allocated up front,
+// so memory stays the same whatever the length of the track. At the end of the file the track is
+// reopened and the chunk is filled from the start, so the loop has no gap.
+// Merge sounds are queued through a small ring of ints and played from one synthesized blip,
+// pitched by tile; triggering one allocates nothing.
+public class AudioEngine implements Runnable {
+    private static final int CHUNK_FRAMES = 1024; // Frames mixed and written at a time, about 23 ms at 44.1 kHz
+    private static final int LINE_CHUNKS = 4; // Size of the line's own buffer, in chunks
+    private static final int VOICES = 8; // Merge sounds that can play at once
+    private static final int TRIGGER_CAPACITY = 16; // Ring of queued merge sounds, a power of two
+    private static final float DEFAULT_RATE = 44100f; // Output format when there is no music
+    private static final double BLIP_SECONDS = 0.08;
+    private static final double BLIP_HZ = 440;
+    private static final int EFFECT_VOLUME = 9000; // Peak amplitude of a merge sound
+
+    private final String musicPath; // Null to play merge sounds only
+    private final Thread thread;
+    private volatile boolean running;
+
+    // Merge sound ring: written by the game loop thread only, read by the audio thread
+    private final int[] triggers = new int[TRIGGER_CAPACITY];
+    private volatile int triggerHead; // Next slot to read
+    private volatile int triggerTail; // Next slot to write
+
+    // Audio thread state
+    private AudioInputStream music;
+    private short[] blip; // One merge sound, mono, at the output sample rate
+    private final int[] voiceExponent = new int[VOICES]; // 0 = voice idle
+    private final long[] voicePosition = new long[VOICES]; // Position in blip, 16.16 fixed point
+    private final int[] pitchSteps = new int[TileSprites.MAX_EXPONENT]; // Blip step per tile exponent, 16.16 fixed point
+
+    public AudioEngine(String musicPath) {
+        this.musicPath = musicPath;
+        thread = new Thread(this, "audio");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    // Queue a merge sound for a tile, pitched up a semitone per doubling; dropped if the ring is full
+    // Call from one thread only (the game loop)
+    public void playMerge(int tileExponent) {
+        int tail = triggerTail;
+        if (tail - triggerHead == TRIGGER_CAPACITY) {
+            return;
+        }
+        triggers[tail & (TRIGGER_CAPACITY - 1)] = Math.max(1, Math.min(TileSprites.MAX_EXPONENT - 1, tileExponent));
+        triggerTail = tail + 1;
+    }
+
+    public void run() {
+        AudioFormat format;
+        SourceDataLine line;
+        try {
+            music = openMusic();
+            float rate = music != null ? music.getFormat().getSampleRate() : DEFAULT_RATE;
+            int channels = music != null ? music.getFormat().getChannels() : 2;
+            format = pcmFormat(rate, channels);
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, CHUNK_FRAMES * format.getFrameSize() * LINE_CHUNKS);
+        } catch (LineUnavailableException | IllegalArgumentException | IOException e) {
+            System.err.println("Audio unavailable: " + e);
+            return;
+        }
+        createBlip(format.getSampleRate());
+
+        int channels = format.getChannels();
+        byte[] bytes = new byte[CHUNK_FRAMES * format.getFrameSize()];
+        int[] mix = new int[CHUNK_FRAMES * channels];
+        line.start();
+        while (running) {
+            readMusic(bytes);
+            for (int i = 0; i < mix.length; i++) {
+                mix[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8)); // 16-bit little endian
+            }
+            startVoices();
+            mixVoices(mix, channels);
+            for (int i = 0; i < mix.length; i++) {
+                int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+                bytes[2 * i] = (byte) sample;
+                bytes[2 * i + 1] = (byte) (sample >> 8);
+            }
+            line.write(bytes, 0, bytes.length); // Blocks while the line is full, which paces the loop
+        }
+        line.drain();
+        line.close();
+        closeMusic();
+    }
+
+    // Signed 16-bit little-endian PCM, the only format the mixer works in
+    private static AudioFormat pcmFormat(float rate, int channels) {
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, 16, channels, channels * 2, rate, false);
+    }
+
+    // Open the track as a stream in the mixer's format, or null if there is no usable track
+    private AudioInputStream openMusic() throws IOException {
+        if (musicPath == null) {
+            return null;
+        }
+        try {
+            AudioInputStream source = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(musicPath)));
+            AudioFormat target = pcmFormat(source.getFormat().getSampleRate(), source.getFormat().getChannels());
+            return source.getFormat().matches(target) ? source : AudioSystem.getAudioInputStream(target, source);
+        } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+            System.err.println("Cannot stream " + musicPath + ": " + e);
+            return null;
+        } catch (FileNotFoundException e) {
+            System.err.println("No background music: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Fill the chunk from the track, starting it again at the end of the file; silence if there is none
+    private void readMusic(byte[] bytes) {
+        int filled = 0;
+        boolean reopened = false;
+        while (filled < bytes.length && music != null) {
+            int read;
+            try {
+                read = music.read(bytes, filled, bytes.length - filled);
+            } catch (IOException e) {
+                System.err.println("Background music stopped: " + e);
+                closeMusic();
+                break;
+            }
+            if (read > 0) {
+                filled += read;
+                reopened = false;
+            } else if (read < 0) {
+                if (reopened) {
+                    closeMusic(); // Nothing to play even from the start
+                    break;
+                }
+                closeMusic();
+                try {
+                    music = openMusic();
+                } catch (IOException e) {
+                    music = null;
+                }
+                reopened = true;
+            }
+        }
+        java.util.Arrays.fill(bytes, filled, bytes.length, (byte) 0);
+    }
+
+    private void closeMusic() {
+        if (music != null) {
+            try {
+                music.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+            music = null;
+        }
+    }
+
+    // A short sine tone with a fast decay, the one sample every merge sound is played from
+    private void createBlip(float rate) {
+        blip = new short[(int) (rate * BLIP_SECONDS)];
+        for (int i = 0; i < blip.length; i++) {
+            double t = i / (double) rate;
+            double envelope = Math.exp(-t * 40) * Math.min(1, i / 64.0); // Short fade in, no click
+            blip[i] = (short) (EFFECT_VOLUME * envelope * Math.sin(2 * Math.PI * BLIP_HZ * t));
+        }
+        for (int e = 1; e < pitchSteps.length; e++) {
+            pitchSteps[e] = (int) (65536 * Math.pow(2, (e - 1) / 12.0));
+        }
+    }
+
+    // Take queued merge sounds off the ring, reusing the voice closest to its end when all are busy
+    private void startVoices() {
+        int head = triggerHead;
+        while (head != triggerTail) {
+            int exponent = triggers[head & (TRIGGER_CAPACITY - 1)];
+            int voice = 0;
+            for (int v = 0; v < VOICES; v++) {
+                if (voiceExponent[v] == 0) {
+                    voice = v;
+                    break;
+                }
+                if (voicePosition[v] > voicePosition[voice]) {
+                    voice = v;
+                }
+            }
+            voiceExponent[voice] = exponent;
+            voicePosition[voice] = 0;
+            head++;
+        }
+        triggerHead = head;
+    }
+
+    // Add every playing merge sound to the chunk, the same on all channels
+    private void mixVoices(int[] mix, int channels) {
+        long end = (long) blip.length << 16;
+        for (int v = 0; v < VOICES; v++) {
+            if (voiceExponent[v] == 0) {
+                continue;
+            }
+            int step = pitchSteps[voiceExponent[v]];
+            long position = voicePosition[v];
+            for (int i = 0; i < mix.length && position < end; i += channels) {
+                int sample = blip[(int) (position >> 16)];
+                for (int c = 0; c < channels; c++) {
+                    mix[i + c] += sample;
+                }
+                position += step;
+            }
+            voicePosition[v] = position;
+            if (position >= end) {
+                voiceExponent[v] = 0;
+            }
+        }
+    }
+}
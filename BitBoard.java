@@ -0,0 +1,343 @@
+// Packed 4x4 board engine: each cell is a 4-bit exponent (0 = empty, e = 2^e)
+// Cell (row, col) lives in bits 4 * (row * 4 + col), so row r is the 16 bits at 16 * r
+// Moves match Game2048.slideLine except for one limit: a nibble holds tiles up to MAX_TILE (32768),
+// so a line in which two 32768s would merge is left as it is, with no points. The board and the score
+// always agree, but such a merge is never made, and a board whose only move is one counts as game
+// over. fromGrid refuses bigger tiles; callers holding a real game check fits first.
+public final class BitBoard {
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+    public static final int MAX_TILE = 1 << 15; // Largest tile a cell can hold
+
+    private static final int SIZE = 4;
+    private static final long ROW_MASK = 0xFFFFL;
+    private static final long COL_MASK = 0x000F000F000F000FL;
+
+    // Lookup tables indexed by a 16-bit row, built once from the same rules as Game2048.moveLeft
+    // (package-private for VectorMoveKernel, which gathers from them)
+    static final char[] ROW_LEFT = new char[65536]; // Row after sliding left
+    static final char[] ROW_RIGHT = new char[65536]; // Row after sliding right
+    static final long[] COL_UP = new long[65536]; // Row after sliding left, spread out as a column
+    static final long[] COL_DOWN = new long[65536]; // Row after sliding right, spread out as a column
+    static final int[] SCORE_LEFT = new int[65536]; // Points gained by sliding the row left
+    static final int[] SCORE_RIGHT = new int[65536]; // Points gained by sliding the row right
+
+    static {
+        int[] line = new int[SIZE];
+        for (int row = 0; row < 65536; row++) {
+            for (int i = 0; i < SIZE; i++) {
+                int exponent = (row >>> (4 * i)) & 0xF;
+                line[i] = exponent == 0 ? 0 : 1 << exponent;
+            }
+            int points = slideLeft(line);
+            int result = 0;
+            for (int i = 0; i < SIZE; i++) {
+                result |= exponentOf(line[i]) << (4 * i);
+            }
+            if (hasTileOver(line)) { // Two 32768s merged, 65536 does not fit a nibble
+                result = row;
+                points = 0;
+            }
+            int reversedRow = reverseRow(row);
+            int reversedResult = reverseRow(result);
+
+            ROW_LEFT[row] = (char) result;
+            ROW_RIGHT[reversedRow] = (char) reversedResult;
+            COL_UP[row] = unpackColumn(result);
+            COL_DOWN[reversedRow] = unpackColumn(reversedResult);
+            SCORE_LEFT[row] = points;
+            SCORE_RIGHT[reversedRow] = points;
+        }
+    }
+
+    private BitBoard() {
+    }
+
+    // Slide one line towards index 0, exactly like the inner loop of Game2048.moveLeft
+    private static int slideLeft(int[] line) {
+        int points = 0;
+        int mergeValue = -1;
+        for (int j = 1; j < SIZE; j++) {
+            if (line[j] != 0) {
+                int col = j;
+                while (col > 0 && (line[col - 1] == 0 || line[col - 1] == line[col])) {
+                    if (line[col - 1] == line[col] && mergeValue != col - 1) {
+                        line[col - 1] *= 2;
+                        points += line[col - 1];
+                        line[col] = 0;
+                        mergeValue = col - 1;
+                    } else if (line[col - 1] == 0) {
+                        line[col - 1] = line[col];
+                        line[col] = 0;
+                    }
+                    col--;
+                }
+            }
+        }
+        return points;
+    }
+
+    private static boolean hasTileOver(int[] line) {
+        for (int value : line) {
+            if (value > MAX_TILE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int reverseRow(int row) {
+        return ((row >>> 12) & 0x000F) | ((row >>> 4) & 0x00F0) | ((row << 4) & 0x0F00) | ((row << 12) & 0xF000);
+    }
+
+    // Move the four nibbles of a row onto the nibbles of column 0
+    private static long unpackColumn(int row) {
+        long r = row;
+        return (r | (r << 12) | (r << 24) | (r << 36)) & COL_MASK;
+    }
+
+    // Swap rows and columns so that column c becomes row c
+    public static long transpose(long x) {
+        long a1 = x & 0xF0F00F0FF0F00F0FL;
+        long a2 = x & 0x0000F0F00000F0F0L;
+        long a3 = x & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    // Slide the board in the given direction without spawning a new tile
+    public static long move(long board, int direction) {
+        switch (direction) {
+            case UP: return moveUp(board);
+            case DOWN: return moveDown(board);
+            case LEFT: return moveLeft(board);
+            case RIGHT: return moveRight(board);
+            default: throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+    }
+
+    // Points that move(board, direction) would add to the score
+    public static int moveScore(long board, int direction) {
+        switch (direction) {
+            case UP: return scoreRows(transpose(board), SCORE_LEFT);
+            case DOWN: return scoreRows(transpose(board), SCORE_RIGHT);
+            case LEFT: return scoreRows(board, SCORE_LEFT);
+            case RIGHT: return scoreRows(board, SCORE_RIGHT);
+            default: throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+    }
+
+    public static long moveLeft(long board) {
+        return (long) ROW_LEFT[(int) (board & ROW_MASK)]
+                | (long) ROW_LEFT[(int) ((board >>> 16) & ROW_MASK)] << 16
+                | (long) ROW_LEFT[(int) ((board >>> 32) & ROW_MASK)] << 32
+                | (long) ROW_LEFT[(int) ((board >>> 48) & ROW_MASK)] << 48;
+    }
+
+    public static long moveRight(long board) {
+        return (long) ROW_RIGHT[(int) (board & ROW_MASK)]
+                | (long) ROW_RIGHT[(int) ((board >>> 16) & ROW_MASK)] << 16
+                | (long) ROW_RIGHT[(int) ((board >>> 32) & ROW_MASK)] << 32
+                | (long) ROW_RIGHT[(int) ((board >>> 48) & ROW_MASK)] << 48;
+    }
+
+    public static long moveUp(long board) {
+        long t = transpose(board);
+        return COL_UP[(int) (t & ROW_MASK)]
+                | COL_UP[(int) ((t >>> 16) & ROW_MASK)] << 4
+                | COL_UP[(int) ((t >>> 32) & ROW_MASK)] << 8
+                | COL_UP[(int) ((t >>> 48) & ROW_MASK)] << 12;
+    }
+
+    public static long moveDown(long board) {
+        long t = transpose(board);
+        return COL_DOWN[(int) (t & ROW_MASK)]
+                | COL_DOWN[(int) ((t >>> 16) & ROW_MASK)] << 4
+                | COL_DOWN[(int) ((t >>> 32) & ROW_MASK)] << 8
+                | COL_DOWN[(int) ((t >>> 48) & ROW_MASK)] << 12;
+    }
+
+    private static int scoreRows(long board, int[] table) {
+        return table[(int) (board & ROW_MASK)]
+                + table[(int) ((board >>> 16) & ROW_MASK)]
+                + table[(int) ((board >>> 32) & ROW_MASK)]
+                + table[(int) ((board >>> 48) & ROW_MASK)];
+    }
+
+    // Slide boards[offset .. offset + count) in one direction into results, which may be boards itself
+    // scores[i] gets the points of board i, bit i of changed is set if it moved and cleared if not
+    // (changed needs a long per 64 boards). Returns the number of boards that moved.
+    // Same tables and results as move and moveScore, without the per-board switch; the changed
+    // bits are gathered a word at a time, so the loop has no branch and no read-modify-write per board.
+    // Goes through VectorMoveKernel when the jdk.incubator.vector module is loaded, else the scalar loop
+    public static int moveAll(long[] boards, int offset, int count, int direction, long[] results, int[] scores, long[] changed) {
+        if (direction < UP || direction > RIGHT) {
+            throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+        int[] index = Vectors.ENABLED ? VectorMoveKernel.newIndex() : null;
+        int moved = 0;
+        int end = offset + count;
+        for (int start = offset; start < end; ) {
+            int stop = Math.min(end, (start | 63) + 1); // Up to the end of this word of changed
+            long bits = index != null
+                    ? VectorMoveKernel.slide(boards, start, stop, direction, results, scores, index)
+                    : slide(boards, start, stop, direction, results, scores);
+            long mask = (-1L << start) & (-1L >>> (63 - ((stop - 1) & 63)));
+            changed[start >>> 6] = (changed[start >>> 6] & ~mask) | bits;
+            moved += Long.bitCount(bits);
+            start = stop;
+        }
+        return moved;
+    }
+
+    // The scalar moveAll for boards [start, stop) within one word, returns their changed bits
+    static long slide(long[] boards, int start, int stop, int direction, long[] results, int[] scores) {
+        switch (direction) {
+            case UP: return slideColumns(boards, start, stop, COL_UP, SCORE_LEFT, results, scores);
+            case DOWN: return slideColumns(boards, start, stop, COL_DOWN, SCORE_RIGHT, results, scores);
+            case LEFT: return slideRows(boards, start, stop, ROW_LEFT, SCORE_LEFT, results, scores);
+            case RIGHT: return slideRows(boards, start, stop, ROW_RIGHT, SCORE_RIGHT, results, scores);
+            default: throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+    }
+
+    // Whether moveAll uses VectorMoveKernel, decided on its first call: the JVM must have been started
+    // with --add-modules jdk.incubator.vector, vectors must hold more than one board, and
+    // -Dbitboard.vectors=false turns it off (to compare against the scalar loop)
+    private static final class Vectors {
+        static final boolean ENABLED = probe();
+
+        private static boolean probe() {
+            if (!Boolean.parseBoolean(System.getProperty("bitboard.vectors", "true"))
+                    || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                return false;
+            }
+            try {
+                return VectorMoveKernel.isUseful();
+            } catch (LinkageError e) {
+                return false; // Built without the module, or a JDK whose incubator API has changed
+            }
+        }
+    }
+
+    // True if bit i of a changed set filled by moveAll is set
+    public static boolean isChanged(long[] changed, int i) {
+        return (changed[i >>> 6] & 1L << i) != 0;
+    }
+
+    // moveLeft/moveRight and the score for boards [start, stop) within one word, returns their changed bits
+    private static long slideRows(long[] boards, int start, int stop, char[] rows, int[] points, long[] results, int[] scores) {
+        long bits = 0;
+        for (int i = start; i < stop; i++) {
+            long board = boards[i];
+            int r0 = (int) (board & ROW_MASK);
+            int r1 = (int) ((board >>> 16) & ROW_MASK);
+            int r2 = (int) ((board >>> 32) & ROW_MASK);
+            int r3 = (int) (board >>> 48);
+            long result = rows[r0] | (long) rows[r1] << 16 | (long) rows[r2] << 32 | (long) rows[r3] << 48;
+            scores[i] = points[r0] + points[r1] + points[r2] + points[r3];
+            results[i] = result;
+            long difference = result ^ board;
+            bits |= ((difference | -difference) >>> 63) << i;
+        }
+        return bits;
+    }
+
+    // moveUp/moveDown and the score, one transpose serving both
+    private static long slideColumns(long[] boards, int start, int stop, long[] columns, int[] points, long[] results, int[] scores) {
+        long bits = 0;
+        for (int i = start; i < stop; i++) {
+            long board = boards[i];
+            long t = transpose(board);
+            int c0 = (int) (t & ROW_MASK);
+            int c1 = (int) ((t >>> 16) & ROW_MASK);
+            int c2 = (int) ((t >>> 32) & ROW_MASK);
+            int c3 = (int) (t >>> 48);
+            long result = columns[c0] | columns[c1] << 4 | columns[c2] << 8 | columns[c3] << 12;
+            scores[i] = points[c0] + points[c1] + points[c2] + points[c3];
+            results[i] = result;
+            long difference = result ^ board;
+            bits |= ((difference | -difference) >>> 63) << i;
+        }
+        return bits;
+    }
+
+    // Number of empty cells
+    public static int emptyCount(long board) {
+        long occupied = board | (board >>> 1); // Fold every nibble onto its low bit
+        occupied |= occupied >>> 2;
+        return 16 - Long.bitCount(occupied & 0x1111111111111111L);
+    }
+
+    // Put a tile with the given exponent into the index-th empty cell, counting in row-major order
+    public static long placeTile(long board, int index, int exponent) {
+        for (int shift = 0; shift < 64; shift += 4) {
+            if (((board >>> shift) & 0xF) == 0 && index-- == 0) {
+                return board | (long) exponent << shift;
+            }
+        }
+        return board;
+    }
+
+    // True if no move changes the board
+    public static boolean isGameOver(long board) {
+        return moveLeft(board) == board && moveRight(board) == board && moveUp(board) == board && moveDown(board) == board;
+    }
+
+    // Exponent stored for a tile value (0 for an empty cell)
+    public static int exponentOf(int value) {
+        return value == 0 ? 0 : Integer.numberOfTrailingZeros(value);
+    }
+
+    // Tile value at (row, col)
+    public static int tileAt(long board, int row, int col) {
+        int exponent = (int) ((board >>> (4 * (row * SIZE + col))) & 0xF);
+        return exponent == 0 ? 0 : 1 << exponent;
+    }
+
+    // True if the grid is 4x4 with every tile at most MAX_TILE, so fromGrid can pack it
+    public static boolean fits(int[][] grid) {
+        if (grid.length != SIZE) {
+            return false;
+        }
+        for (int[] row : grid) {
+            if (row.length != SIZE) {
+                return false;
+            }
+            for (int value : row) {
+                if (value > MAX_TILE) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Pack a 4x4 grid of tile values, throws IllegalArgumentException for a tile over MAX_TILE
+    public static long fromGrid(int[][] grid) {
+        long board = 0;
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                if (grid[i][j] > MAX_TILE) {
+                    throw new IllegalArgumentException("Tile " + grid[i][j] + " does not fit a bitboard");
+                }
+                board |= (long) exponentOf(grid[i][j]) << (4 * (i * SIZE + j));
+            }
+        }
+        return board;
+    }
+
+    // Unpack a board into an existing 4x4 grid
+    public static void toGrid(long board, int[][] grid) {
+        for (int i = 0; i < SIZE; i++) {
+            for (int j = 0; j < SIZE; j++) {
+                grid[i][j] = tileAt(board, i, j);
+            }
+        }
+    }
+}
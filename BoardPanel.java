@@ -0,0 +1,97 @@
+import java.awt.*;
+import javax.swing.*;
+
+// Custom painted grid: one pre-rendered image per tile value, and only changed cells are repainted
+public class BoardPanel extends JPanel {
+    private final int size;
+    private final int[] shown; // Value currently drawn in each cell (row * size + col)
+    private final TileSprites sprites = new TileSprites();
+    private final LatencyHistogram paintTimes; // Time spent in each paint, null when not measured
+    private final Rectangle clip = new Rectangle(); // Reused for every paint
+    private final Insets insets = new Insets(0, 0, 0, 0); // Reused, getInsets() would allocate
+    private int cellWidth;
+    private int cellHeight;
+    private int originX; // Top left corner of the cells, centred like GridLayout centres its leftover pixels
+    private int originY;
+
+    public BoardPanel(int size) {
+        this(size, null);
+    }
+
+    public BoardPanel(int size, LatencyHistogram paintTimes) {
+        this.size = size;
+        this.paintTimes = paintTimes;
+        this.shown = new int[size * size];
+        setOpaque(true);
+        setBackground(Color.LIGHT_GRAY);
+    }
+
+    // Same as setCells(int[][]) for a flat row-major array such as BoardSnapshot.cells
+    public void setCells(int[] cells) {
+        layoutCells();
+        for (int cell = 0; cell < shown.length; cell++) {
+            if (shown[cell] != cells[cell]) {
+                shown[cell] = cells[cell];
+                repaint(originX + (cell % size) * cellWidth, originY + (cell / size) * cellHeight, cellWidth, cellHeight);
+            }
+        }
+    }
+
+    // Show a new grid, asking Swing to repaint just the cells whose value changed
+    public void setCells(int[][] grid) {
+        layoutCells();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int value = grid[i][j];
+                if (shown[i * size + j] != value) {
+                    shown[i * size + j] = value;
+                    repaint(originX + j * cellWidth, originY + i * cellHeight, cellWidth, cellHeight);
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        layoutCells();
+        if (cellWidth <= 0 || cellHeight <= 0) {
+            return;
+        }
+        sprites.resize(cellWidth, cellHeight);
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+
+        clip.setBounds(0, 0, getWidth(), getHeight()); // Kept if the graphics has no clip
+        g.getClipBounds(clip);
+        int x0 = originX;
+        int y0 = originY;
+        if (clip.x < x0 || clip.y < y0 || clip.x + clip.width > x0 + size * cellWidth || clip.y + clip.height > y0 + size * cellHeight) {
+            super.paintComponent(g); // Margins around the cells are only painted on a full repaint
+        }
+
+        // Only the cells that intersect the dirty region
+        int firstCol = Math.max(0, (clip.x - x0) / cellWidth);
+        int lastCol = Math.min(size - 1, (clip.x + clip.width - 1 - x0) / cellWidth);
+        int firstRow = Math.max(0, (clip.y - y0) / cellHeight);
+        int lastRow = Math.min(size - 1, (clip.y + clip.height - 1 - y0) / cellHeight);
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstCol; j <= lastCol; j++) {
+                g.drawImage(sprites.sprite(shown[i * size + j], configuration), x0 + j * cellWidth, y0 + i * cellHeight, null);
+            }
+        }
+        if (paintTimes != null) {
+            paintTimes.record(System.nanoTime() - start);
+        }
+    }
+
+    // Work out the cell size and position for the current component size and border
+    private void layoutCells() {
+        getInsets(insets);
+        int innerWidth = getWidth() - insets.left - insets.right;
+        int innerHeight = getHeight() - insets.top - insets.bottom;
+        cellWidth = innerWidth / size;
+        cellHeight = innerHeight / size;
+        originX = insets.left + (innerWidth - size * cellWidth) / 2;
+        originY = insets.top + (innerHeight - size * cellHeight) / 2;
+    }
+}
@@ -0,0 +1,23 @@
+// Immutable copy of the game state, handed from the game logic thread to the renderer
+public final class BoardSnapshot {
+    public final int size;
+    public final int[] cells; // Tile values, row * size + col
+    public final int score;
+    public final boolean gameOver;
+    public final int direction; // Move that produced this state, -1 for a new game
+    public final int spawnCell; // Cell of the tile added after the move, -1 if none
+    public final int[] before; // Cells before the move (the previous snapshot's array, not a copy)
+
+    public BoardSnapshot(int[][] grid, int score, boolean gameOver, int direction, int spawnCell, int[] before) {
+        this.size = grid.length;
+        this.cells = new int[size * size];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(grid[i], 0, cells, i * size, size);
+        }
+        this.score = score;
+        this.gameOver = gameOver;
+        this.direction = direction;
+        this.spawnCell = spawnCell;
+        this.before = before == null ? cells : before;
+    }
+}
@@ -0,0 +1,43 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+// Frees a direct or memory-mapped ByteBuffer at once instead of whenever the GC collects it
+// A mapping keeps its file open until it is freed (on Windows the file can then be neither renamed nor
+// deleted), and a direct buffer holds native memory the heap limit never sees. Uses the JDK's
+// Unsafe.invokeCleaner; where that is missing, buffers are simply left to the GC.
+public class DirectBuffers {
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private DirectBuffers() {
+    }
+
+    // Release buffer, which must be the buffer as allocated or mapped (not a slice or duplicate) and
+    // must not be touched again afterwards
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(buffer);
+        } catch (Throwable t) {
+            // A slice or an already released buffer, the GC frees it as before
+        }
+    }
+
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(unsafe);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
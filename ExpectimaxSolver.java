@@ -0,0 +1,313 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// Depth-limited expectimax player on the packed BitBoard engine
+// Move nodes take the best of the four slides, chance nodes average over the spawn rule
+// of Game2048.addNewNumber (a 2 or a 4, each half the time, in a uniformly chosen empty cell)
+// Leaves are scored by the hand-tuned row heuristic, or by a trained NTupleNetwork when one is given;
+// its values are points still to come, so move nodes then add the points each slide wins.
+public class ExpectimaxSolver implements MovePolicy {
+    private static final float SPAWN_TWO_PROBABILITY = 0.5f; // (random.nextInt(2) + 1) * 2
+    private static final float MIN_PROBABILITY = 0.0001f; // Chance branches less likely than this are not expanded
+    private static final int CLOCK_CHECK_INTERVAL = 4096; // Nodes between deadline checks
+
+    // Heuristic weights for a single row, summed over the rows and columns of a board
+    private static final float LOST_PENALTY = 200000.0f;
+    private static final float MONOTONICITY_POWER = 4.0f;
+    private static final float MONOTONICITY_WEIGHT = 47.0f;
+    private static final float SUM_POWER = 3.5f;
+    private static final float SUM_WEIGHT = 11.0f;
+    private static final float MERGES_WEIGHT = 700.0f;
+    private static final float EMPTY_WEIGHT = 270.0f;
+    private static final float[] ROW_HEURISTIC = new float[65536];
+
+    static {
+        int[] line = new int[4];
+        for (int row = 0; row < 65536; row++) {
+            for (int i = 0; i < 4; i++) {
+                line[i] = (row >>> (4 * i)) & 0xF;
+            }
+            float sum = 0;
+            int empty = 0;
+            int merges = 0;
+            int previous = 0;
+            int counter = 0;
+            for (int i = 0; i < 4; i++) {
+                int rank = line[i];
+                sum += (float) Math.pow(rank, SUM_POWER);
+                if (rank == 0) {
+                    empty++;
+                } else {
+                    if (previous == rank) {
+                        counter++;
+                    } else if (counter > 0) {
+                        merges += 1 + counter;
+                        counter = 0;
+                    }
+                    previous = rank;
+                }
+            }
+            if (counter > 0) {
+                merges += 1 + counter;
+            }
+            float monotonicityLeft = 0;
+            float monotonicityRight = 0;
+            for (int i = 1; i < 4; i++) {
+                float before = (float) Math.pow(line[i - 1], MONOTONICITY_POWER);
+                float after = (float) Math.pow(line[i], MONOTONICITY_POWER);
+                if (line[i - 1] > line[i]) {
+                    monotonicityLeft += before - after;
+                } else {
+                    monotonicityRight += after - before;
+                }
+            }
+            ROW_HEURISTIC[row] = LOST_PENALTY + EMPTY_WEIGHT * empty + MERGES_WEIGHT * merges
+                    - MONOTONICITY_WEIGHT * Math.min(monotonicityLeft, monotonicityRight)
+                    - SUM_WEIGHT * sum;
+        }
+    }
+
+    private final long timeBudgetNanos;
+    private final int maxDepth;
+    private final boolean parallel;
+    private final NTupleNetwork network; // Null for the row heuristic
+
+    // Transposition table: one slot per index, keys are stored XORed with their data so a torn
+    // write from another root task reads back as a miss instead of a wrong value
+    private final long[] tableKeys;
+    private final long[] tableData;
+    private final int tableShift;
+    private int generation; // Bumped for every decision, older entries are replaced first
+
+    private long totalNodes;
+    private long totalNanos;
+    private int lastDepth;
+
+    // Solver with a 10 ms budget, a 1M entry table and the root moves split across cores
+    public ExpectimaxSolver() {
+        this(10, 8, 20, true);
+    }
+
+    public ExpectimaxSolver(long timeBudgetMillis, int maxDepth, int tableBits, boolean parallel) {
+        this(timeBudgetMillis, maxDepth, tableBits, parallel, null);
+    }
+
+    public ExpectimaxSolver(long timeBudgetMillis, int maxDepth, int tableBits, boolean parallel, NTupleNetwork network) {
+        this.network = network;
+        this.timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+        this.maxDepth = maxDepth;
+        this.parallel = parallel;
+        this.tableKeys = new long[1 << tableBits];
+        this.tableData = new long[1 << tableBits];
+        this.tableShift = 64 - tableBits;
+    }
+
+    // A board past BitBoard.MAX_TILE cannot be searched, it gets a random move
+    public int chooseMove(int[][] grid, Random random) {
+        if (!BitBoard.fits(grid)) {
+            return random.nextInt(4);
+        }
+        int move = bestMove(BitBoard.fromGrid(grid));
+        return move < 0 ? random.nextInt(4) : move;
+    }
+
+    // Best direction for the board, or -1 if no move changes it
+    public int bestMove(long board) {
+        long start = System.nanoTime();
+        long deadline = start + timeBudgetNanos;
+        generation = (generation + 1) & 0xFFFF;
+
+        int legal = 0;
+        int onlyMove = -1;
+        for (int direction = 0; direction < 4; direction++) {
+            if (BitBoard.move(board, direction) != board) {
+                legal++;
+                onlyMove = direction;
+            }
+        }
+        if (legal <= 1) {
+            return onlyMove;
+        }
+
+        // Iterative deepening: keep the answer of the deepest search that finished in time
+        int best = -1;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int result = searchRoot(board, depth, depth == 1 ? Long.MAX_VALUE : deadline);
+            if (result < 0) {
+                break;
+            }
+            best = result;
+            lastDepth = depth;
+            long elapsed = System.nanoTime() - start;
+            if (elapsed * 8 > timeBudgetNanos) {
+                break; // The next depth costs several times more, it would not finish
+            }
+        }
+        totalNanos += System.nanoTime() - start;
+        return best;
+    }
+
+    // Search every root move to the given depth, returns -1 if the deadline cut it short
+    private int searchRoot(long board, int depth, long deadline) {
+        List<Search> searches = new ArrayList<>(4);
+        for (int direction = 0; direction < 4; direction++) {
+            long moved = BitBoard.move(board, direction);
+            if (moved != board) {
+                searches.add(new Search(direction, moved, points(board, direction), depth, deadline));
+            }
+        }
+        if (parallel) {
+            ForkJoinTask.invokeAll(searches);
+        } else {
+            for (Search search : searches) {
+                search.invoke();
+            }
+        }
+
+        int best = -1;
+        float bestScore = Float.NEGATIVE_INFINITY; // Network leaf values can be negative
+        for (Search search : searches) {
+            totalNodes += search.nodes;
+            if (search.aborted) {
+                return -1;
+            }
+            if (best < 0 || search.score > bestScore) {
+                bestScore = search.score;
+                best = search.direction;
+            }
+        }
+        return best;
+    }
+
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    // Depth reached by the most recent decision
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    public double getNodesPerSecond() {
+        return totalNanos == 0 ? 0 : totalNodes * 1e9 / totalNanos;
+    }
+
+    // Points a slide adds to a move node's value, only counted when leaves are network values
+    private int points(long board, int direction) {
+        return network == null ? 0 : BitBoard.moveScore(board, direction);
+    }
+
+    // Static evaluation of a board from the row table, applied to rows and columns
+    public static float evaluate(long board) {
+        return rowHeuristic(board) + rowHeuristic(BitBoard.transpose(board));
+    }
+
+    private static float rowHeuristic(long board) {
+        return ROW_HEURISTIC[(int) (board & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((board >>> 16) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((board >>> 32) & 0xFFFF)]
+                + ROW_HEURISTIC[(int) ((board >>> 48) & 0xFFFF)];
+    }
+
+    private int tableIndex(long board) {
+        return (int) ((board * 0x9E3779B97F4A7C15L) >>> tableShift);
+    }
+
+    // Cached value for the board if it was searched at least this deep, NaN otherwise
+    private float lookup(long board, int depth) {
+        int index = tableIndex(board);
+        long data = tableData[index];
+        if ((tableKeys[index] ^ data) != board || (int) (data & 0xFF) < depth) {
+            return Float.NaN;
+        }
+        return Float.intBitsToFloat((int) (data >>> 32));
+    }
+
+    // Replace stale entries from earlier decisions first, then shallower ones
+    private void store(long board, int depth, float value) {
+        int index = tableIndex(board);
+        long old = tableData[index];
+        int oldGeneration = (int) ((old >>> 8) & 0xFFFF);
+        if (oldGeneration == generation && (int) (old & 0xFF) > depth) {
+            return;
+        }
+        long data = (long) Float.floatToRawIntBits(value) << 32 | (long) generation << 8 | depth;
+        tableData[index] = data;
+        tableKeys[index] = board ^ data;
+    }
+
+    // One root move searched to a fixed depth, run as a fork-join task
+    private class Search extends RecursiveAction {
+        final int direction;
+        final long board;
+        final int points;
+        final int depth;
+        final long deadline;
+        long nodes;
+        boolean aborted;
+        float score;
+
+        Search(int direction, long board, int points, int depth, long deadline) {
+            this.direction = direction;
+            this.board = board;
+            this.points = points;
+            this.depth = depth;
+            this.deadline = deadline;
+        }
+
+        protected void compute() {
+            score = points + chanceNode(board, 1.0f, depth);
+        }
+
+        private float moveNode(long board, float probability, int depth) {
+            float best = 0; // No legal move means the game is lost
+            for (int direction = 0; direction < 4; direction++) {
+                long moved = BitBoard.move(board, direction);
+                if (moved != board) {
+                    best = Math.max(best, points(board, direction) + chanceNode(moved, probability, depth));
+                }
+            }
+            return best;
+        }
+
+        private float chanceNode(long board, float probability, int depth) {
+            if (++nodes % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                aborted = true;
+            }
+            if (aborted) {
+                return 0;
+            }
+            if (depth == 0 || probability < MIN_PROBABILITY) {
+                return network == null ? evaluate(board) : network.evaluate(board);
+            }
+            float cached = lookup(board, depth);
+            if (!Float.isNaN(cached)) {
+                return cached;
+            }
+
+            int empty = 0;
+            for (int shift = 0; shift < 64; shift += 4) {
+                if (((board >>> shift) & 0xF) == 0) {
+                    empty++;
+                }
+            }
+            float cellProbability = probability / empty;
+            float total = 0;
+            for (int shift = 0; shift < 64; shift += 4) {
+                if (((board >>> shift) & 0xF) == 0) {
+                    total += moveNode(board | (1L << shift), cellProbability * SPAWN_TWO_PROBABILITY, depth - 1) * SPAWN_TWO_PROBABILITY;
+                    total += moveNode(board | (2L << shift), cellProbability * (1 - SPAWN_TWO_PROBABILITY), depth - 1) * (1 - SPAWN_TWO_PROBABILITY);
+                }
+            }
+            float value = total / empty;
+            if (!aborted) {
+                store(board, depth, value);
+            }
+            return value;
+        }
+    }
+}
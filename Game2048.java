@@ -1,41 +1,121 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.sound.sampled.*;
 
 // Main class for the 2048 game
 public class Game2048 {
-    private static final int SIZE = 4; // Size of the grid (4x4)
+    static final int MIN_SIZE = 3;
+    static final int MAX_SIZE = 64;
+    static final int MAX_UNDO_DEPTH = 1 << 20; // --undo-depth is clamped to this
+    private static final long MAX_UNDO_BYTES = 256L << 20; // Undo history memory on the largest boards
+    private final int size; // Side length of the grid, 4 unless --size is given
     private int[][] grid; // Grid for the game
-    private Random random; // Random number generator
+    private GameRandom random; // Random number generator, its state is saved with each undo step
     private int score; // Current score
     private String playerName; // Current player's name
     private String highScorePlayer; // Name of the player with the highest score
     private int highScore; // Highest score
     private JFrame frame; // Main window frame
-    private JPanel gridPanel; // Panel for the grid
+    private BoardPanel gridPanel; // Panel that paints the grid tiles
+    private ActiveBoardCanvas activeBoard; // Animated board used instead of gridPanel with --active-render
+    private BoardSnapshot lastSnapshot; // Most recent state shown (EDT only)
     private JPanel menuPanel; // Panel for the main menu
-    private JLabel[][] gridLabels; // Labels for displaying the grid tiles
     private JLabel scoreLabel; // Label for displaying the score
     private JLabel highScoreLabel; // Label for displaying the high score
     private JLabel sideLabelLeft;
-    private JLabel sideLabelRight;
-    private Map<String, Integer> highScores; // Map for storing high scores
-    private JPanel gameOverPanel;
-    private Clip backgroundMusic; // Clip object for background music
+    private JLabel sideLabelRight; // Also shows the hint
+    private static final long HINT_BUDGET_MILLIS = 300; // Time the advisor spends on a hint
+    private static final String[] DIRECTION_NAMES = {"Up", "Down", "Left", "Right"};
+    private MonteCarloAdvisor hintAdvisor; // Works out hints off the EDT (windowed game only)
+    private AtomicBoolean hintCancel; // Set to abandon the hint being worked out, null when none is (EDT only)
+    private Map<String, Integer> highScores; // Best score of each player
+    private ScoreStore scoreStore; // Persistent score log behind highScores
+    private Leaderboard leaderboard; // Ranked best scores for the game over panel
+    private static final int LEADERBOARD_ROWS = 5;
+    private JPanel gameOverPanel; // Built on the first game over and reused
+    private JLabel leaderboardLabel;
+    private ImagePanel playerNamePanel; // Built the first time it is shown and reused
+    private JTextField nameField;
+    private AssetManager assets; // Loads images, music and the score log in the background (windowed game only)
+    private CompletableFuture<ScoreStore> scoreStoreLoad; // Score log being opened by the asset manager
+    private AudioEngine audio; // Streams the background music and plays merge sounds, null when headless
+
+    // Board metadata kept up to date by setCell, so spawning and the game over check need no scan
+    private int[] freeCells; // Indexes (row * size + col) of the empty cells, the first freeCount are valid
+    private int[] freeSlot; // Position of each cell in freeCells, -1 when the cell holds a tile
+    private int freeCount; // Number of empty cells
+    private boolean canMove; // True while an empty cell or a pair of equal neighbours exists
+    private int maxTile; // Largest tile on the grid
+    private int[] line; // Scratch copy of the row or column being moved
+    private int lastSpawnCell = -1; // Cell that received the most recent new tile
+    private boolean recordReplays; // Record every game (only games with a window do)
+    private Replay replay; // Recording of the game in progress
+    private MoveHistory history; // Undo/redo states, null when undo is off (headless games)
+    private SaveSlots saveSlots; // Checkpoint of the game in progress, null for headless games
+    private int moveCount; // Effective moves in the game in progress
+    private GameLoop gameLoop; // Thread that applies moves, only used with a window
+    private GameMetrics metrics; // Latency histograms and counters, null for headless games
+    private TelemetryWriter.Recorder telemetry; // Per-move export, null unless telemetry is on
+    private boolean gameOverShown; // Game over panel already shown for this game (EDT only)
+    private static long maxInputLatencyMillis = 0; // Drop moves that waited longer than this, 0 = never
+    private static boolean activeRendering = false; // Animated BufferStrategy board instead of Swing painting
+    private static int targetFps = 60;
+    private static int boardSize = 4; // Grid size for the windowed game, set with --size
+    private static int undoDepth = 1024; // Moves that can be undone in the windowed game, set with --undo-depth
+    private static int metricsLogSeconds = 0; // Print the metrics this often, set with --metrics-log, 0 = never
+    private static String telemetryPath; // Export every move to this file, set with --telemetry
+    private static long launchNanos = System.nanoTime();
     
-    // Constructor to initialize the game
-    public Game2048() {
-        grid = new int[SIZE][SIZE];
-        random = new Random();
+    // Constructor for a headless 4x4 game: board state only, no window (used by the simulator)
+    Game2048(GameRandom random) {
+        this(random, 4);
+    }
+
+    // Constructor for a headless game of any size from MIN_SIZE to MAX_SIZE
+    Game2048(GameRandom random, int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be " + MIN_SIZE + " to " + MAX_SIZE + ": " + size);
+        }
+        this.size = size;
+        grid = new int[size][size];
+        freeCells = new int[size * size];
+        freeSlot = new int[size * size];
+        line = new int[size];
+        rebuildMetadata();
+        this.random = random;
         score = 0;
         highScore = 0;
         highScores = new HashMap<>();
+        leaderboard = new Leaderboard();
+    }
 
+    // Constructor to initialize the game
+    public Game2048() {
+        this(new GameRandom(), boardSize);
+        recordReplays = true;
+        metrics = GameMetrics.start(metricsLogSeconds);
+        enableUndo(undoDepth);
+        if (telemetryPath != null) {
+            openTelemetry(telemetryPath);
+        }
+        System.out.printf("Undo history: %d moves, %.1f KiB%n", history.getCapacity() - 1, history.getMemoryBytes() / 1024.0);
+        boolean resumed = resumeSavedGame(); // First, so a resumed board needs nothing else loaded
+
+        // Start every slow load at once; they run in parallel while the window is built
+        assets = new AssetManager(launchNanos);
+        assets.image("menu.png");
+        assets.image("entername.png");
+        assets.image("gameover.png");
         loadHighScores();
+        playBackgroundMusic("background_music.wav");
 
         // Set up the main window frame
         frame = new JFrame("2048 Game");
@@ -47,20 +127,10 @@ public class Game2048 {
         frame.setLocationRelativeTo(null);
 
         
-        // Set up the grid panel
-        gridPanel = new JPanel(new GridLayout(SIZE, SIZE));
-        gridLabels = new JLabel[SIZE][SIZE];
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                gridLabels[i][j] = new JLabel("", JLabel.CENTER);
-                gridLabels[i][j].setFont(new Font("Arial", Font.BOLD, 34));
-                gridLabels[i][j].setOpaque(true);
-                gridLabels[i][j].setBackground(Color.LIGHT_GRAY);
-                gridPanel.add(gridLabels[i][j]);
-            }
+        createGridPanel();
+        if (activeRendering) {
+            activeBoard = new ActiveBoardCanvas(size, targetFps, metrics.frame, this::useFallbackRendering);
         }
-        gridPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
-        gridPanel.setBorder(BorderFactory.createLineBorder(Color.gray, 5));
 
         // Set up the info panel for displaying the score and high score
         JPanel infoPanel = new JPanel(new GridLayout(2, 1));
@@ -70,13 +140,13 @@ public class Game2048 {
         scoreLabel.setBackground(Color.DARK_GRAY); // Set background color to black
         scoreLabel.setForeground(Color.YELLOW); // Set text color to white
 
-        highScoreLabel = new JLabel("High Score: 0 by ", JLabel.CENTER);
+        highScoreLabel = new JLabel(highScorePlayer == null ? "High Score: 0 by " : "High Score: " + highScore + " by " + highScorePlayer, JLabel.CENTER);
         highScoreLabel.setFont(new Font("Impact", Font.PLAIN, 44));
         highScoreLabel.setOpaque(true); // Make the JLabel opaque
         highScoreLabel.setBackground(Color.DARK_GRAY); // Set background color to black
         highScoreLabel.setForeground(Color.YELLOW); // Set text color to white
 
-        sideLabelLeft = new JLabel("<html><div style='text-align: left;padding-left: 60px; padding-right: 60px;'><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br>Tip: Use the <br>Up, Down, Left, Right<br> for Movement</html>", JLabel.CENTER);
+        sideLabelLeft = new JLabel("<html><div style='text-align: left;padding-left: 60px; padding-right: 60px;'><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br><br>Tip: Use the <br>Up, Down, Left, Right<br> for Movement<br><br>Ctrl+Z to undo,<br>Ctrl+Y to redo<br><br>H for a hint</html>", JLabel.CENTER);
         sideLabelLeft.setFont(new Font("Impact", Font.PLAIN, 18));
         sideLabelLeft.setOpaque(true); // Make the JLabel opaque
         sideLabelLeft.setBackground(Color.DARK_GRAY); // Set background color to black
@@ -87,85 +157,191 @@ public class Game2048 {
         sideLabelRight.setOpaque(true); // Make the JLabel opaque
         sideLabelRight.setBackground(Color.DARK_GRAY); // Set background color to black
         sideLabelRight.setForeground(Color.WHITE); // Set text color to white
+        sideLabelRight.setPreferredSize(sideLabelRight.getPreferredSize()); // Same width whatever the hint says
+        hintAdvisor = new MonteCarloAdvisor(HINT_BUDGET_MILLIS, true);
         
         infoPanel.add(scoreLabel);
         infoPanel.add(highScoreLabel);
         infoPanel.add(sideLabelLeft);
         infoPanel.add(sideLabelRight);
 
+        // All moves run on the game loop thread, the EDT only renders its snapshots
+        gameLoop = new GameLoop(this, this::showSnapshot, maxInputLatencyMillis);
+        gameLoop.start();
+
         // Add a key listener to handle user input
         frame.addKeyListener(new KeyAdapter() {
             public void keyPressed(KeyEvent e) {
+                // Only queue the move here, the game loop thread applies it and publishes the result
+                long start = System.nanoTime();
                 int keyCode = e.getKeyCode();
+                int command = -1;
                 if (keyCode == KeyEvent.VK_UP) {
-                    moveUp();
+                    command = BitBoard.UP;
                 } else if (keyCode == KeyEvent.VK_DOWN) {
-                    moveDown();
+                    command = BitBoard.DOWN;
                 } else if (keyCode == KeyEvent.VK_LEFT) {
-                    moveLeft();
+                    command = BitBoard.LEFT;
                 } else if (keyCode == KeyEvent.VK_RIGHT) {
-                    moveRight();
+                    command = BitBoard.RIGHT;
+                } else if (keyCode == KeyEvent.VK_Z && e.isControlDown()) {
+                    command = e.isShiftDown() ? GameLoop.REDO : GameLoop.UNDO;
+                } else if (keyCode == KeyEvent.VK_Y && e.isControlDown()) {
+                    command = GameLoop.REDO;
+                } else if (keyCode == KeyEvent.VK_H) {
+                    showHint();
                 }
-                updateGridLabels();
-                updateScore();
-                if (isGameOver()) {
-                    showGameOverPanel();
+                if (command >= 0) {
+                    cancelHint(); // The board is about to change, the hint would be for the old one
+                    gameLoop.submit(command);
                 }
+                metrics.keyPressed.record(System.nanoTime() - start);
             }
         });
        
+        // Report how long the first frame and the background loading took
+        CompletableFuture<Double> firstFrame = new CompletableFuture<>();
+        frame.addWindowListener(new WindowAdapter() {
+            public void windowOpened(WindowEvent e) {
+                firstFrame.complete(assets.millisSinceStart());
+            }
+
+            public void windowClosing(WindowEvent e) {
+                stopGameLoop(); // Runs before EXIT_ON_CLOSE exits
+            }
+        });
+        firstFrame.thenCombine(assets.allLoaded(), (shown, loaded) -> shown).thenAccept(shown ->
+                System.out.printf("Startup: first frame %.1f ms, all assets %.1f ms (%s)%n",
+                        shown, assets.millisSinceStart(), assets.timings()));
+
         frame.setFocusable(true);
         frame.requestFocus();
         frame.setVisible(true);
-        frame.getContentPane().add(gridPanel, BorderLayout.CENTER);
+        frame.getContentPane().add(boardView(), BorderLayout.CENTER);
 
-        // Show the main menu when the game starts
-        createMainMenu();
-        showMainMenu();
+        if (resumed) {
+            // Straight back to the board, the menu is only built if it is asked for
+            showBoard();
+            gameLoop.submit(GameLoop.SHOW);
+            System.out.printf("Resumed %s's game (score %d, %d moves) %.1f ms after launch%n",
+                    playerName, score, moveCount, (System.nanoTime() - launchNanos) / 1e6);
+        } else {
+            // Show the main menu when the game starts, its image fills in once it is decoded
+            showMainMenu();
+        }
+    }
 
-        playBackgroundMusic("background_music.wav");
+    // Set up the grid panel
+    void createGridPanel() {
+        gridPanel = new BoardPanel(size, metrics == null ? null : metrics.frame);
+        gridPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        gridPanel.setBorder(BorderFactory.createLineBorder(Color.gray, 5));
+    }
+
+    // Component that currently shows the board
+    private Component boardView() {
+        return activeBoard != null ? activeBoard : gridPanel;
+    }
+
+    // Active rendering could not start: put the passively painted grid in its place
+    private void useFallbackRendering() {
+        if (activeBoard == null) {
+            return;
+        }
+        Container contentPane = frame.getContentPane();
+        boolean showing = activeBoard.getParent() == contentPane;
+        if (showing) {
+            contentPane.remove(activeBoard);
+        }
+        activeBoard = null;
+        if (lastSnapshot != null) {
+            gridPanel.setCells(lastSnapshot.cells);
+        }
+        if (showing) {
+            contentPane.add(gridPanel, BorderLayout.CENTER);
+            frame.revalidate();
+            frame.repaint();
+        }
     }
 
     public class ImagePanel extends JPanel {
-        private Image backgroundImage;
+        private final String imagePath;
+        private volatile Image backgroundImage; // Null until the asset manager has decoded it
+        private BufferedImage scaledImage; // Background at the panel's size, drawn without scaling (EDT only)
+        private int requestedWidth; // Size of the scaled copy being made, so it is only asked for once
+        private int requestedHeight;
 
-        // Constructor to set the background image
+        // Constructor to set the background image, the panel shows without it until it is loaded
         public ImagePanel(String imagePath) {
-            backgroundImage = new ImageIcon(imagePath).getImage();
+            this.imagePath = imagePath;
             setLayout(new GridBagLayout()); // Use GridBagLayout for components
+            assets.image(imagePath).thenAccept(image -> {
+                backgroundImage = image;
+                repaint();
+            });
         }
     
-        // Override the paintComponent method to draw the background image scaled
+        // Draw the background from a copy already scaled to the panel's size
+        // After a resize the copy is made on a loader thread; until then the old copy (or the source
+        // image) is stretched into place, which is only done for the few frames in between
         @Override
         protected void paintComponent(Graphics g) {
             super.paintComponent(g);
-            g.drawImage(backgroundImage, 0, 0, getWidth(), getHeight(), this);
+            int width = getWidth();
+            int height = getHeight();
+            if (width <= 0 || height <= 0 || backgroundImage == null) {
+                return;
+            }
+            if (scaledImage == null || scaledImage.getWidth() != width || scaledImage.getHeight() != height) {
+                BufferedImage ready = requestScaledImage(width, height);
+                if (ready == null) {
+                    g.drawImage(scaledImage != null ? scaledImage : backgroundImage, 0, 0, width, height, null);
+                    return;
+                }
+                scaledImage = ready;
+            }
+            g.drawImage(scaledImage, 0, 0, null);
         }
-    }
 
-    private void playBackgroundMusic(String filePath) {
-        try {
-            // Load the audio file
-            AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(new File(filePath).getAbsoluteFile());
-            backgroundMusic = AudioSystem.getClip();
-            backgroundMusic.open(audioInputStream);
-
-            // Loop the background music indefinitely
-            backgroundMusic.loop(Clip.LOOP_CONTINUOUSLY);
+        // The cached copy for this size if it is ready, otherwise start it and repaint when it is done
+        private BufferedImage requestScaledImage(int width, int height) {
+            CompletableFuture<BufferedImage> future = assets.scaledImage(imagePath, width, height, getGraphicsConfiguration());
+            if (future.isDone()) {
+                return future.isCompletedExceptionally() ? null : future.join();
+            }
+            if (width != requestedWidth || height != requestedHeight) {
+                requestedWidth = width;
+                requestedHeight = height;
+                future.thenRun(this::repaint);
+            }
+            return null;
+        }
 
-            // Start playing the background music
-            backgroundMusic.start();
-        } catch (UnsupportedAudioFileException | IOException | LineUnavailableException e) {
-            e.printStackTrace();
+        // Off screen the copy is only held by the cache, which may let it go if memory gets short
+        @Override
+        public void removeNotify() {
+            super.removeNotify();
+            scaledImage = null;
+            requestedWidth = 0;
+            requestedHeight = 0;
         }
     }
 
+    // Stream the music in a loop on the audio thread, which opens the file itself so nothing waits here
+    private void playBackgroundMusic(String filePath) {
+        audio = new AudioEngine(filePath);
+        audio.start();
+    }
+
     
 
     
 
     // Show the main menu
     public void showMainMenu() {
+        if (menuPanel == null) {
+            createMainMenu(); // Built on first use, a resumed game may never need it
+        }
         frame.getContentPane().removeAll();
         frame.getContentPane().add(menuPanel, BorderLayout.CENTER);
         frame.revalidate();
@@ -175,218 +351,512 @@ public class Game2048 {
 
     // Initialize the grid with starting numbers
     public void initializeGrid() {
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
                 grid[i][j] = 0; // Set all grid cells to 0
             }
         }
+        rebuildMetadata();
         addNewNumber();
         addNewNumber();
     }
 
+    // Reset the score and deal a fresh grid
+    public void resetGame() {
+        resetGame(random.nextLong());
+    }
+
+    // Start a game from a known seed, the same seed and moves always give the same game
+    public void resetGame(long seed) {
+        random.setSeed(seed);
+        score = 0; // Reset the score
+        moveCount = 0;
+        initializeGrid();
+        if (telemetry != null) {
+            telemetry.startGame();
+        }
+        if (recordReplays) {
+            replay = new Replay(seed, size);
+        }
+        if (history != null) {
+            history.clear();
+            history.record(grid, freeCells, freeCount, score, random.getState(), -1);
+        }
+        checkpoint();
+    }
+
+    // Open the save file for this board size and continue the game it holds, returns true if there was one
+    // A resumed game has no replay, its earlier moves were not kept
+    private boolean resumeSavedGame() {
+        try {
+            saveSlots = SaveSlots.open("savegame-" + size + "x" + size + ".dat", size);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false; // Play on without checkpoints
+        }
+        // Checkpoints only live in memory for a moment, make sure the last one reaches the disk on exit
+        SaveSlots saves = saveSlots;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                saves.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+        if (!saveSlots.hasGame()) {
+            return false;
+        }
+        freeCount = saveSlots.restore(grid, freeCells);
+        score = saveSlots.getScore();
+        random.setState(saveSlots.getRngState());
+        moveCount = saveSlots.getMoveCount();
+        playerName = saveSlots.getPlayer();
+        restoreMetadata();
+        if (isGameOver()) {
+            return false;
+        }
+        if (history != null) {
+            history.clear();
+            history.record(grid, freeCells, freeCount, score, random.getState(), -1);
+        }
+        return true;
+    }
+
+    // Save the game in progress to its slot, or mark the slot empty once the game is over
+    private void checkpoint() {
+        if (saveSlots == null) {
+            return;
+        }
+        if (isGameOver()) {
+            saveSlots.clear();
+        } else {
+            saveSlots.save(grid, freeCells, freeCount, score, random.getState(), moveCount, playerName);
+        }
+    }
+
+    // Keep the last depth moves for undo (at most MAX_UNDO_DEPTH, and fewer on big boards so the history
+    // stays within MAX_UNDO_BYTES); the memory for all of them is allocated here
+    public void enableUndo(int depth) {
+        long stateBytes = size * size * (1 + Character.BYTES) + Integer.BYTES + Long.BYTES + 1; // As MoveHistory keeps it
+        depth = (int) Math.max(1, Math.min(Math.min(depth, MAX_UNDO_DEPTH), MAX_UNDO_BYTES / stateBytes - 1));
+        history = new MoveHistory(depth + 1, size * size);
+        history.record(grid, freeCells, freeCount, score, random.getState(), -1);
+    }
+
+    // Take back the last move, including the tile it spawned; returns false if there is nothing to undo
+    public boolean undo() {
+        if (history == null || !history.undo()) {
+            return false;
+        }
+        if (replay != null) {
+            replay.truncate(replay.getMoveCount() - 1);
+        }
+        moveCount--;
+        restoreFromHistory();
+        checkpoint();
+        return true;
+    }
+
+    // Play an undone move again; the RNG state was restored, so it spawns the same tile as before
+    public boolean redo() {
+        if (history == null || !history.redo()) {
+            return false;
+        }
+        if (replay != null) {
+            replay.addMove(history.getDirection());
+        }
+        moveCount++;
+        restoreFromHistory();
+        checkpoint();
+        return true;
+    }
+
+    // Put back the board, the empty cell list in its old order, the score and the RNG state
+    private void restoreFromHistory() {
+        freeCount = history.restore(grid, freeCells);
+        score = history.getScore();
+        random.setState(history.getRngState());
+        restoreMetadata();
+    }
+
+    // Rebuild the rest of the metadata around a restored grid and empty cell list, keeping the list order
+    private void restoreMetadata() {
+        lastSpawnCell = -1;
+        Arrays.fill(freeSlot, -1);
+        for (int k = 0; k < freeCount; k++) {
+            freeSlot[freeCells[k]] = k;
+        }
+        maxTile = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                maxTile = Math.max(maxTile, grid[i][j]);
+            }
+        }
+        updateCanMove();
+    }
+
     // Add a new number (2 or 4) to a random empty cell in the grid
     public void addNewNumber() {
-        int row, col;
-        do {
-            row = random.nextInt(SIZE);
-            col = random.nextInt(SIZE);
-        } while (grid[row][col] != 0); // Find an empty cell
-        grid[row][col] = (random.nextInt(2) + 1) * 2; // Add a 2 or 4 to the cell
+        if (freeCount == 0) {
+            return; // No empty cell left
+        }
+        int cell = freeCells[random.nextInt(freeCount)]; // Uniform pick among the empty cells
+        lastSpawnCell = cell;
+        setCell(cell / size, cell % size, (random.nextInt(2) + 1) * 2); // Add a 2 or 4 to the cell
+        updateCanMove();
     }
 
-    // Update the display of the grid
-    public void updateGridLabels() {
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
+    // Write one cell and update the empty list and the max tile
+    private void setCell(int row, int col, int value) {
+        int old = grid[row][col];
+        if (old == value) {
+            return;
+        }
+        grid[row][col] = value;
+
+        int cell = row * size + col;
+        if (old == 0) {
+            // Cell filled: move the last free entry into its slot
+            int last = freeCells[--freeCount];
+            freeCells[freeSlot[cell]] = last;
+            freeSlot[last] = freeSlot[cell];
+            freeSlot[cell] = -1;
+        } else if (value == 0) {
+            freeSlot[cell] = freeCount;
+            freeCells[freeCount++] = cell;
+        }
+        if (value > maxTile) {
+            maxTile = value;
+        }
+    }
+
+    // Refresh the legal move flag after the board changed
+    // Only a full board needs the neighbour scan, which stops at the first equal pair
+    private void updateCanMove() {
+        canMove = freeCount > 0 || hasEqualNeighbours();
+    }
+
+    private boolean hasEqualNeighbours() {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                if (i < size - 1 && grid[i][j] == grid[i + 1][j]) {
+                    return true; // There is a mergeable cell below
+                }
+                if (j < size - 1 && grid[i][j] == grid[i][j + 1]) {
+                    return true; // There is a mergeable cell to the right
+                }
+            }
+        }
+        return false;
+    }
+
+    // Recompute all board metadata from the grid, after the grid was replaced wholesale
+    private void rebuildMetadata() {
+        freeCount = 0;
+        maxTile = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int cell = i * size + j;
                 if (grid[i][j] == 0) {
-                    gridLabels[i][j].setText("");
-                    gridLabels[i][j].setBackground(Color.LIGHT_GRAY);
-                } else if (grid[i][j] == 2048) {
-                    gridLabels[i][j].setText(String.valueOf(grid[i][j]));
-                    gridLabels[i][j].setBackground(getTileColor(grid[i][j]));
+                    freeSlot[cell] = freeCount;
+                    freeCells[freeCount++] = cell;
                 } else {
-                    gridLabels[i][j].setText(String.valueOf(grid[i][j]));
-                    gridLabels[i][j].setBackground(getTileColor(grid[i][j]));
+                    freeSlot[cell] = -1;
+                    maxTile = Math.max(maxTile, grid[i][j]);
                 }
-                gridLabels[i][j].setBorder(BorderFactory.createLineBorder(Color.BLACK));
             }
         }
+        updateCanMove();
+    }
+
+    // Update the display of the grid, only the tiles that changed are repainted
+    public void updateGridLabels() {
+        long start = System.nanoTime();
+        gridPanel.setCells(grid);
+        if (metrics != null) {
+            metrics.render.record(System.nanoTime() - start);
+        }
     }
 
     // Get the color for a tile based on its value
     public Color getTileColor(int value) {
-        switch (value) {
-            case 2: return new Color(238, 228, 218);
-            case 4: return new Color(237, 224, 200);
-            case 8: return new Color(242, 177, 121);
-            case 16: return new Color(245, 149, 99);
-            case 32: return new Color(246, 124, 95);
-            case 64: return new Color(246, 94, 59);
-            case 128: return new Color(237, 207, 114);
-            case 256: return new Color(237, 204, 97);
-            case 512: return new Color(237, 200, 80);
-            case 1024: return new Color(237, 197, 63);
-            case 2048: return new Color(237, 194, 46);
-            default: return Color.WHITE;
+        return tileColor(value);
+    }
+
+    // Tile palette shared by every board view, the Color objects are created once
+    private static final Color[] TILE_COLORS = {
+        Color.WHITE, // Unused, empty cells are painted light gray
+        new Color(238, 228, 218), // 2
+        new Color(237, 224, 200), // 4
+        new Color(242, 177, 121), // 8
+        new Color(245, 149, 99), // 16
+        new Color(246, 124, 95), // 32
+        new Color(246, 94, 59), // 64
+        new Color(237, 207, 114), // 128
+        new Color(237, 204, 97), // 256
+        new Color(237, 200, 80), // 512
+        new Color(237, 197, 63), // 1024
+        new Color(237, 194, 46), // 2048
+    };
+
+    static Color tileColor(int value) {
+        int exponent = BitBoard.exponentOf(value);
+        if (Integer.bitCount(value) != 1 || exponent >= TILE_COLORS.length) {
+            return Color.WHITE;
         }
+        return TILE_COLORS[exponent];
     }
 
-    // Move tiles up and combine if necessary
-    public void moveUp() {
-        boolean moved = false;
-        for (int j = 0; j < SIZE; j++) {
-            int mergeValue = -1;
-            for (int i = 1; i < SIZE; i++) {
-                if (grid[i][j] != 0) {
-                    int row = i;
-                    while (row > 0 && (grid[row - 1][j] == 0 || grid[row - 1][j] == grid[row][j])) {
-                        if (grid[row - 1][j] == grid[row][j] && mergeValue != row - 1) {
-                            grid[row - 1][j] *= 2;
-                            score += grid[row - 1][j];
-                            grid[row][j] = 0;
-                            mergeValue = row - 1;
-                            moved = true;
-                        } else if (grid[row - 1][j] == 0) {
-                            grid[row - 1][j] = grid[row][j];
-                            grid[row][j] = 0;
-                            moved = true;
-                        }
-                        row--;
-                    }
-                }
-            }
+    // Move tiles in one of the BitBoard directions, returns true if the board changed
+    public boolean move(int direction) {
+        long start = System.nanoTime();
+        int scoreBefore = score;
+        if (telemetry != null) {
+            telemetry.beginMove(grid);
+        }
+        boolean moved;
+        switch (direction) {
+            case BitBoard.UP: moved = moveUp(); break;
+            case BitBoard.DOWN: moved = moveDown(); break;
+            case BitBoard.LEFT: moved = moveLeft(); break;
+            case BitBoard.RIGHT: moved = moveRight(); break;
+            default: return false;
         }
         if (moved) {
-            addNewNumber();
-            updateScore();
+            moveCount++;
+            checkpoint();
+        }
+        if (moved && telemetry != null) {
+            telemetry.endMove(grid, moveCount - 1, direction, score - scoreBefore, lastSpawnCell, System.nanoTime() - start);
+            if (isGameOver()) {
+                telemetry.endGame();
+            }
+        }
+        if (audio != null && score > scoreBefore) {
+            audio.playMerge(BitBoard.exponentOf(Integer.highestOneBit(score - scoreBefore))); // Higher for bigger merges
+        }
+        if (moved && history != null) {
+            history.record(grid, freeCells, freeCount, score, random.getState(), direction);
+        }
+        if (moved && replay != null) {
+            replay.addMove(direction);
+            if (isGameOver()) {
+                saveReplay();
+            }
+        }
+        if (metrics != null) {
+            metrics.move.record(System.nanoTime() - start);
+            if (moved) {
+                metrics.countMove();
+            }
+        }
+        return moved;
+    }
+
+    // Write the finished game's recording to the replays folder
+    private void saveReplay() {
+        replay.setPlayer(playerName);
+        replay.setFinalScore(score);
+        File directory = new File("replays");
+        String name = playerName == null ? "player" : playerName.replaceAll("[^A-Za-z0-9_-]", "_");
+        try {
+            directory.mkdirs();
+            replay.save(new File(directory, System.currentTimeMillis() + "-" + name + "-" + score + ".replay"));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        replay = null;
+    }
+
+    // Move tiles up and combine if necessary
+    public boolean moveUp() {
+        return slide(BitBoard.UP);
     }
 
     // Move tiles down and combine if necessary
-    public void moveDown() {
+    public boolean moveDown() {
+        return slide(BitBoard.DOWN);
+    }
+
+    // Move tiles left and combine if necessary
+    public boolean moveLeft() {
+        return slide(BitBoard.LEFT);
+    }
+
+    // Move tiles right and combine if necessary
+    public boolean moveRight() {
+        return slide(BitBoard.RIGHT);
+    }
+
+    // Shared by every direction: walk each row or column from the edge the tiles move towards,
+    // copy it into line, compact it, and write back only the cells that changed
+    private boolean slide(int direction) {
+        // First cell of the first line, the step along a line, and the step from one line to the next
+        int row0 = 0;
+        int col0 = 0;
+        int rowStep = 0;
+        int colStep = 0;
+        boolean vertical = direction == BitBoard.UP || direction == BitBoard.DOWN;
+        switch (direction) {
+            case BitBoard.UP: rowStep = 1; break;
+            case BitBoard.DOWN: row0 = size - 1; rowStep = -1; break;
+            case BitBoard.LEFT: colStep = 1; break;
+            default: col0 = size - 1; colStep = -1; break;
+        }
         boolean moved = false;
-        for (int j = 0; j < SIZE; j++) {
-            int mergeValue = -1;
-            for (int i = SIZE - 2; i >= 0; i--) {
-                if (grid[i][j] != 0) {
-                    int row = i;
-                    while (row < SIZE - 1 && (grid[row + 1][j] == 0 || grid[row + 1][j] == grid[row][j])) {
-                        if (grid[row + 1][j] == grid[row][j] && mergeValue != row + 1) {
-                            grid[row + 1][j] *= 2;
-                            score += grid[row + 1][j];
-                            grid[row][j] = 0;
-                            mergeValue = row + 1;
-                            moved = true;
-                        } else if (grid[row + 1][j] == 0) {
-                            grid[row + 1][j] = grid[row][j];
-                            grid[row][j] = 0;
-                            moved = true;
-                        }
-                        row++;
-                    }
+        for (int l = 0; l < size; l++) {
+            int firstRow = vertical ? row0 : l;
+            int firstCol = vertical ? l : col0;
+            for (int p = 0, i = firstRow, j = firstCol; p < size; p++, i += rowStep, j += colStep) {
+                line[p] = grid[i][j];
+            }
+            score += slideLine(line);
+            for (int p = 0, i = firstRow, j = firstCol; p < size; p++, i += rowStep, j += colStep) {
+                if (line[p] != grid[i][j]) {
+                    setCell(i, j, line[p]);
+                    moved = true;
                 }
             }
         }
         if (moved) {
             addNewNumber();
-            updateScore();
         }
+        return moved;
     }
 
-    // Move tiles left and combine if necessary
-    public void moveLeft() {
-        boolean moved = false;
-        for (int i = 0; i < SIZE; i++) {
-            int mergeValue = -1;
-            for (int j = 1; j < SIZE; j++) {
-                if (grid[i][j] != 0) {
-                    int col = j;
-                    while (col > 0 && (grid[i][col - 1] == 0 || grid[i][col - 1] == grid[i][col])) {
-                        if (grid[i][col - 1] == grid[i][col] && mergeValue != col - 1) {
-                            grid[i][col - 1] *= 2;
-                            score += grid[i][col - 1];
-                            grid[i][col] = 0;
-                            mergeValue = col - 1;
-                            moved = true;
-                        } else if (grid[i][col - 1] == 0) {
-                            grid[i][col - 1] = grid[i][col];
-                            grid[i][col] = 0;
-                            moved = true;
-                        }
-                        col--;
-                    }
-                }
+    // Slide one row or column towards index 0 and combine tiles, returns the points gained
+    // Single pass: tiles are packed onto a stack at the front of the line and a tile merges with the
+    // one below it while they are equal, so a line costs O(N) instead of shifting one cell at a time.
+    // A merged tile may merge again with the tile below it, but never twice in a row at the same
+    // index (the mergeValue rule), which is exactly what the old cell-by-cell loop did
+    static int slideLine(int[] line) {
+        int points = 0;
+        int top = 0; // Tiles packed at the front so far
+        int mergeValue = -1; // Index of the last merge
+        for (int j = 0; j < line.length; j++) {
+            int value = line[j];
+            if (value == 0) {
+                continue;
+            }
+            line[j] = 0;
+            int col = top++;
+            line[col] = value;
+            while (col > 0 && line[col - 1] == line[col] && mergeValue != col - 1) {
+                line[col - 1] *= 2;
+                points += line[col - 1];
+                line[col] = 0;
+                mergeValue = col - 1;
+                top--;
+                col--;
             }
         }
-        if (moved) {
-            addNewNumber();
-            updateScore();
-        }
+        return points;
     }
 
-    // Move tiles right and combine if necessary
-    public void moveRight() {
-        boolean moved = false;
-        for (int i = 0; i < SIZE; i++) {
-            int mergeValue = -1;
-            for (int j = SIZE - 2; j >= 0; j--) {
-                if (grid[i][j] != 0) {
-                    int col = j;
-                    while (col < SIZE - 1 && (grid[i][col + 1] == 0 || grid[i][col + 1] == grid[i][col])) {
-                        if (grid[i][col + 1] == grid[i][col] && mergeValue != col + 1) {
-                            grid[i][col + 1] *= 2;
-                            score += grid[i][col + 1];
-                            grid[i][col] = 0;
-                            mergeValue = col + 1;
-                            moved = true;
-                        } else if (grid[i][col + 1] == 0) {
-                            grid[i][col + 1] = grid[i][col];
-                            grid[i][col] = 0;
-                            moved = true;
-                        }
-                        col++;
-                    }
-                }
+    // Work out the best move for the board on screen in the background and show it when it is ready
+    // Nothing waits on the EDT; moving before the hint arrives cancels it
+    private void showHint() {
+        BoardSnapshot snapshot = lastSnapshot;
+        if (snapshot == null || snapshot.gameOver || hintCancel != null) {
+            return; // No board, or a hint is already on its way
+        }
+        int[][] cells = new int[snapshot.size][snapshot.size];
+        for (int i = 0; i < snapshot.size; i++) {
+            System.arraycopy(snapshot.cells, i * snapshot.size, cells[i], 0, snapshot.size);
+        }
+        AtomicBoolean cancel = new AtomicBoolean();
+        hintCancel = cancel;
+        sideLabelRight.setText("Thinking...");
+        CompletableFuture.supplyAsync(() -> hintAdvisor.bestMove(cells, cancel)).thenAcceptAsync(direction -> {
+            if (cancel.get()) {
+                return; // The player moved meanwhile
             }
+            hintCancel = null;
+            sideLabelRight.setText(direction < 0 ? "No moves left" : "Hint: " + DIRECTION_NAMES[direction]);
+            System.out.printf("Hint: %.0f rollouts/sec%n", hintAdvisor.getRolloutsPerSecond());
+        }, SwingUtilities::invokeLater);
+    }
+
+    // Stop the hint being worked out and take any hint off the screen (EDT only)
+    private void cancelHint() {
+        if (hintCancel != null) {
+            hintCancel.set(true);
+            hintCancel = null;
         }
-        if (moved) {
-            addNewNumber();
-            updateScore();
+        sideLabelRight.setText("");
+    }
+
+    // Show a snapshot published by the game loop (runs on the EDT)
+    private void showSnapshot(BoardSnapshot snapshot) {
+        long start = System.nanoTime();
+        cancelHint(); // Any new board makes a hint out of date
+        lastSnapshot = snapshot;
+        if (activeBoard != null) {
+            activeBoard.show(snapshot);
+        } else {
+            gridPanel.setCells(snapshot.cells);
+        }
+        metrics.render.record(System.nanoTime() - start);
+        updateScore(snapshot.score);
+        if (snapshot.gameOver && !gameOverShown) {
+            gameOverShown = true;
+            saveHighScores(snapshot.score);
+            showGameOverPanel();
         }
     }
 
+    // Copy of the current state for the renderer, after a move in the given direction (-1 for a new game)
+    BoardSnapshot snapshot(int direction, int[] before) {
+        return new BoardSnapshot(grid, score, isGameOver(), direction, direction < 0 ? -1 : lastSpawnCell, before);
+    }
+
     // Update the displayed score
-    public void updateScore() {
-        scoreLabel.setText("Score: " + score);
-        if (score > highScore) {
-            highScore = score;
+    public void updateScore(int currentScore) {
+        scoreLabel.setText("Score: " + currentScore);
+        if (currentScore > highScore) {
+            highScore = currentScore;
             highScorePlayer = playerName;
             highScoreLabel.setText("High Score : " + highScore + " by " + highScorePlayer);
         }
     }
 
-    // Check if the game is over
-    public boolean isGameOver() {
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                if (grid[i][j] == 0) {
-                    return false; // There is at least one empty cell
-                }
-                if (i > 0 && grid[i][j] == grid[i - 1][j]) {
-                    return false; // There is a mergeable cell above
-                }
-                if (i < SIZE - 1 && grid[i][j] == grid[i + 1][j]) {
-                    return false; // There is a mergeable cell below
-                }
-                if (j > 0 && grid[i][j] == grid[i][j - 1]) {
-                    return false; // There is a mergeable cell to the left
-                }
-                if (j < SIZE - 1 && grid[i][j] == grid[i][j + 1]) {
-                    return false; // There is a mergeable cell to the right
-                }
-            }
+    public int getSize() {
+        return size;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    // Live grid, read only: writes must go through setGrid so the metadata stays in sync
+    public int[][] getGrid() {
+        return grid;
+    }
+
+    // Replace the whole grid with a copy of the given cells
+    public void setGrid(int[][] cells) {
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(cells[i], 0, grid[i], 0, size);
         }
-        return true; // No moves left, game over
+        rebuildMetadata();
+    }
+
+    // Largest tile currently on the grid
+    public int getMaxTile() {
+        return maxTile;
+    }
+
+    public int getEmptyCellCount() {
+        return freeCount;
+    }
+
+    // Check if the game is over: no empty cell and no pair of equal neighbours
+    public boolean isGameOver() {
+        return !canMove;
     }
 
     // Show the game over message and save the high score
@@ -448,15 +918,44 @@ public class Game2048 {
             }
         });
         gameOverPanel.add(newPlayerButton, gbc);
+
+        gbc.gridy++; // Move to the next row
+        leaderboardLabel = new JLabel(" ", JLabel.CENTER);
+        leaderboardLabel.setFont(new Font("Impact", Font.PLAIN, 24));
+        leaderboardLabel.setForeground(Color.YELLOW);
+        gameOverPanel.add(leaderboardLabel, gbc);
     }
     
+    // Top players and the current player's rank, as HTML for the game over panel
+    private String leaderboardText() {
+        StringBuilder text = new StringBuilder("<html><div style='text-align: center;'>Leaderboard<br>");
+        int place = 1;
+        for (Leaderboard.Entry entry : leaderboard.top(LEADERBOARD_ROWS)) {
+            text.append(place++).append(". ").append(escapeHtml(entry.player)).append(" - ").append(entry.score).append("<br>");
+        }
+        int rank = playerName == null ? -1 : leaderboard.rankOf(playerName);
+        if (rank > 0) {
+            text.append("<br>").append(escapeHtml(playerName)).append(" is #").append(rank).append(" of ").append(leaderboard.size());
+        }
+        return text.append("</div></html>").toString();
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     // Method to show the game over panel
     public void showGameOverPanel() {
+        long start = System.nanoTime();
         frame.getContentPane().removeAll(); // Clear the content pane
-        createGameOverPanel(); // Create the game over panel
+        if (gameOverPanel == null) {
+            createGameOverPanel(); // Create the game over panel the first time only
+        }
+        leaderboardLabel.setText(leaderboardText());
         frame.getContentPane().add(gameOverPanel, BorderLayout.CENTER); // Add the game over panel
         frame.revalidate(); // Revalidate the frame to reflect changes
         frame.repaint(); // Repaint the frame to reflect changes
+        metrics.panelSwap.record(System.nanoTime() - start);
     }
 
     // Create the main menu panel with start and exit buttons
@@ -515,6 +1014,7 @@ public class Game2048 {
             public void actionPerformed(ActionEvent e) {
                 int choice = JOptionPane.showConfirmDialog(null, "Are you sure you want to exit?", "Confirm Exit", JOptionPane.YES_NO_OPTION);
                 if (choice == JOptionPane.YES_OPTION) {
+                    stopGameLoop();
                     System.exit(0);
                 }
             }
@@ -529,7 +1029,21 @@ public class Game2048 {
 
     // Show the player name input panel
     public void showPlayerNameInput() {
-        ImagePanel playerNamePanel  = new ImagePanel("entername.png");
+        if (playerNamePanel == null) {
+            createPlayerNameInput();
+        }
+        nameField.setText("");
+
+        frame.getContentPane().removeAll();
+        frame.getContentPane().add(playerNamePanel, BorderLayout.CENTER);
+        frame.revalidate();
+        frame.repaint();
+        nameField.requestFocusInWindow();
+    }
+
+    // Create the player name input panel
+    private void createPlayerNameInput() {
+        playerNamePanel = new ImagePanel("entername.png");
         playerNamePanel.setLayout(new BoxLayout(playerNamePanel, BoxLayout.Y_AXIS));
         playerNamePanel.setBorder(BorderFactory.createEmptyBorder(300, 100, 100, 100));
 
@@ -538,7 +1052,7 @@ public class Game2048 {
         promptLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
         playerNamePanel.add(promptLabel);
 
-        JTextField nameField = new JTextField();
+        nameField = new JTextField();
         nameField.setFont(new Font("Impact", Font.PLAIN, 24));
         nameField.setMaximumSize(new Dimension(400, 50));
         playerNamePanel.add(Box.createVerticalStrut(20));
@@ -557,7 +1071,7 @@ public class Game2048 {
             }
         });
         submitButton.addActionListener(e -> {
-            playerName = nameField.getText();
+            playerName = SaveSlots.storedName(nameField.getText()); // As a checkpoint keeps it, so a resumed game scores under the same name
             if (playerName.isEmpty()) {
                 JOptionPane.showMessageDialog(frame, "Please enter your name.", "Error", JOptionPane.ERROR_MESSAGE);
             } else {
@@ -566,69 +1080,211 @@ public class Game2048 {
         });
         playerNamePanel.add(Box.createVerticalStrut(20));
         playerNamePanel.add(submitButton);
+    }
 
+    // Put the board and the score panels in the window
+    private void showBoard() {
         frame.getContentPane().removeAll();
-        frame.getContentPane().add(playerNamePanel, BorderLayout.CENTER);
+        frame.getContentPane().add(boardView(), BorderLayout.CENTER);
+        frame.getContentPane().add(scoreLabel, BorderLayout.NORTH);
+        frame.getContentPane().add(highScoreLabel, BorderLayout.SOUTH);
+        frame.getContentPane().add(sideLabelLeft, BorderLayout.WEST);
+        frame.getContentPane().add(sideLabelRight, BorderLayout.EAST);
         frame.revalidate();
         frame.repaint();
     }
 
     // Start the game
     public void startGame() {
+        long start = System.nanoTime();
         frame.getContentPane().removeAll(); // Clear the content pane
         showPlayerNameInput(); // Show the player name input panel
         frame.revalidate(); // Revalidate the frame to reflect changes
         frame.repaint(); // Repaint the frame to reflect changes
-        score = 0; // Reset the score
-        initializeGrid();
-        updateGridLabels();
-        updateScore();
-
-        frame.getContentPane().removeAll();
-        frame.getContentPane().add(gridPanel, BorderLayout.CENTER);
-        frame.getContentPane().add(scoreLabel, BorderLayout.NORTH);
-        frame.getContentPane().add(highScoreLabel, BorderLayout.SOUTH);
-        frame.getContentPane().add(sideLabelLeft, BorderLayout.WEST);
-        frame.getContentPane().add(sideLabelRight, BorderLayout.EAST);
-        frame.revalidate();
-        frame.repaint();
+        gameOverShown = false;
+        gameLoop.reset(); // The new grid arrives as a snapshot from the game loop
+        showBoard();
+        metrics.panelSwap.record(System.nanoTime() - start);
     }
 
-    // Load high scores from a file
+    // Load high scores from the score log on a loader thread, importing the old text file the first time
+    // The labels are updated on the EDT once it is in; if it cannot be opened (another game has it
+    // locked, say), the high score label says so and scores are only kept for this session
     private void loadHighScores() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("highscores.txt"))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(":");
-                if (parts.length == 3) {  // Expecting "name:score:highScorePlayer"
-                    String name = parts[0].trim();
-                    int score = Integer.parseInt(parts[1].trim());
-                    String player = parts[2].trim();
-                    highScores.put(name, score);
-                    if (score > highScore) {
-                        highScore = score;
-                        highScorePlayer = player;
-                        highScoreLabel.setText("High Score: " + highScore + " by " + highScorePlayer);
-                    }
-                }
+        CompletableFuture<ScoreStore> load = assets.load("highscores.log", () -> {
+            ScoreStore store = openScoreStore("highscores.log");
+            store.importLegacyText("highscores.txt");
+            fillLeaderboard(store.bestScores());
+            return store;
+        });
+        scoreStoreLoad = load;
+        load.whenCompleteAsync((store, failure) -> {
+            if (failure != null) {
+                scoresUnavailable(failure instanceof CompletionException ? failure.getCause() : failure);
+                return;
             }
+            scoreStore = store;
+            highScores = store.bestScores();
+            showTopScore();
+        }, SwingUtilities::invokeLater);
+    }
+
+    // Load high scores right away from the given log
+    void loadHighScores(String path) {
+        try {
+            scoreStore = openScoreStore(path);
         } catch (IOException e) {
-            // Handle file not found or other IO exceptions
+            scoresUnavailable(e);
+            return;
         }
+        scoreStoreLoad = CompletableFuture.completedFuture(scoreStore);
+        highScores = scoreStore.bestScores();
+        fillLeaderboard(highScores);
+        showTopScore();
     }
 
-    // Save high scores to file
-    public void saveHighScores() {
-        highScores.put(playerName, score);
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("highscores.dat"))) {
-            oos.writeObject(highScores);
+    // Export every move of the windowed game; lossy, so a slow disk can never hold up a move
+    private void openTelemetry(String path) {
+        try {
+            TelemetryWriter writer = TelemetryWriter.open(Paths.get(path), false);
+            telemetry = writer.newRecorder();
+            // Closing the window or Exit hands the recorder's batch to the writer first (stopGameLoop), so
+            // the hook writes out every move; only a kill loses the moves of the batch being filled
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
         } catch (IOException e) {
-            e.printStackTrace();
+            e.printStackTrace(); // Play on without telemetry
+        }
+    }
+
+    // Hand the moves the recorder holds to the writer; game thread only, the recorder is not thread-safe
+    void flushTelemetry() {
+        if (telemetry != null) {
+            telemetry.flush();
+        }
+    }
+
+    // End the game thread on the way out, after it has flushed the telemetry recorder
+    private void stopGameLoop() {
+        if (gameLoop != null) {
+            gameLoop.stop(1000);
+        }
+    }
+
+    // Record every move of this game to the recorder, null to stop (headless games)
+    public void setTelemetry(TelemetryWriter.Recorder recorder) {
+        telemetry = recorder;
+    }
+
+    private static ScoreStore openScoreStore(String path) throws IOException {
+        ScoreStore store = ScoreStore.open(path);
+        // Queued scores are written in the background, make sure they reach the disk on exit
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+        return store;
+    }
+
+    // Rank every stored best score
+    private void fillLeaderboard(Map<String, Integer> scores) {
+        for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+            leaderboard.update(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // The score log could not be opened: stop queueing scores for it and tell the player
+    private void scoresUnavailable(Throwable failure) {
+        System.err.println("High scores will not be saved: " + failure.getMessage());
+        scoreStoreLoad = null;
+        if (highScoreLabel != null) { // Still null while the constructor runs
+            highScoreLabel.setText("High scores not saved this session");
+            highScoreLabel.setToolTipText(failure.getMessage());
+        }
+    }
+
+    // Take the overall best score from the store
+    private void showTopScore() {
+        if (scoreStore.getTopPlayer() != null && scoreStore.getTopScore() >= highScore) {
+            highScore = scoreStore.getTopScore();
+            highScorePlayer = scoreStore.getTopPlayer();
+            if (highScoreLabel != null) { // Still null while the constructor runs
+                highScoreLabel.setText("High Score: " + highScore + " by " + highScorePlayer);
+            }
+        }
+    }
+
+    // Save the finished game's score, the store writes it off the UI thread
+    public void saveHighScores(int finalScore) {
+        if (playerName != null) {
+            leaderboard.update(playerName, finalScore);
+        }
+        if (scoreStoreLoad != null && playerName != null) {
+            // Recorded as soon as the log is open, which it almost always already is
+            String player = playerName;
+            scoreStoreLoad.thenAccept(store -> store.record(player, finalScore));
         }
     }
 
     // Main method to start the game
     public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--simulate")) {
+            Simulator.main(args); // Headless batch mode, no window
+            return;
+        }
+        if (Arrays.asList(args).contains("--verify")) {
+            ReplayVerifier.main(args); // Check recorded games, no window
+            return;
+        }
+        if (Arrays.asList(args).contains("--explore")) {
+            StateExplorer.main(args); // Enumerate reachable states, no window
+            return;
+        }
+        if (Arrays.asList(args).contains("--spectate")) {
+            SpectatorWall.main(args); // Wall of boards played by the computer
+            return;
+        }
+        if (Arrays.asList(args).contains("--telemetry-scan")) {
+            TelemetryReader.main(args); // Summarise an exported telemetry file, no window
+            return;
+        }
+        if (Arrays.asList(args).contains("--train")) {
+            NTupleTrainer.main(args); // Self-play training of an evaluation network, no window
+            return;
+        }
+        if (Arrays.asList(args).contains("--serve")) {
+            GameServer.main(args); // Headless multi-player server, no window
+            return;
+        }
+        if (Arrays.asList(args).contains("--load-test")) {
+            ServerLoadTest.main(args); // Drive a running server, no window
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--input-latency")) {
+                maxInputLatencyMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--active-render")) {
+                activeRendering = true;
+            } else if (args[i].equals("--undo-depth")) {
+                undoDepth = Math.max(1, Math.min(MAX_UNDO_DEPTH, Integer.parseInt(args[++i])));
+            } else if (args[i].equals("--size")) {
+                boardSize = Math.max(MIN_SIZE, Math.min(MAX_SIZE, Integer.parseInt(args[++i])));
+            } else if (args[i].equals("--telemetry")) {
+                telemetryPath = args[++i];
+            } else if (args[i].equals("--metrics-log")) {
+                metricsLogSeconds = Math.max(0, Integer.parseInt(args[++i]));
+            } else if (args[i].equals("--fps")) {
+                targetFps = Math.max(30, Math.min(240, Integer.parseInt(args[++i])));
+            }
+        }
         SwingUtilities.invokeLater(new Runnable() {
             public void run() {
                 new Game2048();
@@ -0,0 +1,149 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+// Runs the game logic on its own thread, fed by a bounded queue of commands from the key handler
+// The queue is a ring of primitive longs guarded by this object's monitor, so a key press allocates nothing
+// Every move that changes the board publishes a BoardSnapshot; the renderer runs on the EDT and
+// always shows the latest snapshot, so a burst of moves costs one repaint, not one per move
+public class GameLoop implements Runnable {
+    public static final int RESET = 4; // Commands 0-3 are the BitBoard directions
+    public static final int UNDO = 5;
+    public static final int REDO = 6;
+    public static final int SHOW = 7; // Publish the board as it is, e.g. a resumed game
+    private static final int STOP = 8; // Flush the game's telemetry and end the loop, see stop()
+    private static final int COMMAND_BITS = 4;
+    private static final long COMMAND_MASK = (1 << COMMAND_BITS) - 1;
+    private static final int QUEUE_CAPACITY = 32; // A power of two, ring indexes wrap with a mask
+
+    private final Game2048 game;
+    private final Consumer<BoardSnapshot> renderer;
+    private final long maxLatencyNanos; // Moves that waited longer than this are dropped, 0 = no cap
+    private final long[] commands = new long[QUEUE_CAPACITY]; // Guarded by this
+    private int head; // Guarded by this: index of the oldest command
+    private int count; // Guarded by this: commands waiting
+    private final AtomicReference<BoardSnapshot> latest = new AtomicReference<>();
+    private final AtomicBoolean renderPending = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong(); // Inputs thrown away: queue full, stale or no effect
+    private final Thread thread;
+
+    public GameLoop(Game2048 game, Consumer<BoardSnapshot> renderer, long maxLatencyMillis) {
+        this.game = game;
+        this.renderer = renderer;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        thread = new Thread(this, "game-logic");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    // Queue a command without ever blocking the caller, returns false if the queue was full
+    public boolean submit(int command) {
+        long stamped = (System.nanoTime() << COMMAND_BITS) | command; // Timestamp in the high bits, command in the low four
+        synchronized (this) {
+            if (count == QUEUE_CAPACITY) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            commands[(head + count) & (QUEUE_CAPACITY - 1)] = stamped;
+            count++;
+            notify(); // Only the game thread ever waits
+        }
+        return true;
+    }
+
+    // Throw away pending moves and start a new game
+    public synchronized void reset() {
+        count = 0;
+        submit(RESET);
+    }
+
+    // Drop pending moves, let the game thread write out what it still holds (the recorder is not
+    // thread-safe, so only it can) and wait up to timeoutMillis for the loop to end; for the exit path
+    public void stop(long timeoutMillis) {
+        synchronized (this) {
+            count = 0;
+            submit(STOP);
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDroppedInputs() {
+        return dropped.get();
+    }
+
+    public void run() {
+        while (true) {
+            long command;
+            try {
+                command = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            int type = (int) (command & COMMAND_MASK);
+            if (type == STOP) {
+                game.flushTelemetry();
+                return;
+            }
+            if (type == RESET) {
+                game.resetGame();
+                publish(-1);
+                continue;
+            }
+            if (type == SHOW) {
+                publish(-1);
+                continue;
+            }
+            long waited = ((System.nanoTime() << COMMAND_BITS) - (command & ~COMMAND_MASK)) >> COMMAND_BITS;
+            if (maxLatencyNanos > 0 && waited > maxLatencyNanos) {
+                dropped.incrementAndGet(); // Too old to still feel like a response to the key press
+                continue;
+            }
+            if (type == UNDO || type == REDO) {
+                if (game.isGameOver() || !(type == UNDO ? game.undo() : game.redo())) {
+                    dropped.incrementAndGet(); // Nothing to undo or redo
+                    continue;
+                }
+                publish(-1); // Shown as a new board, there is no slide to animate
+                continue;
+            }
+            if (game.isGameOver() || !game.move(type)) {
+                dropped.incrementAndGet(); // Redundant: the board did not change
+                continue;
+            }
+            publish(type);
+        }
+    }
+
+    // Oldest queued command, waiting for one if there is none
+    private synchronized long take() throws InterruptedException {
+        while (count == 0) {
+            wait();
+        }
+        long command = commands[head];
+        head = (head + 1) & (QUEUE_CAPACITY - 1);
+        count--;
+        return command;
+    }
+
+    // Hand a snapshot to the EDT, scheduling at most one pending render at a time
+    private void publish(int direction) {
+        BoardSnapshot previous = latest.get();
+        latest.set(game.snapshot(direction, direction < 0 || previous == null ? null : previous.cells));
+        if (renderPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::render);
+        }
+    }
+
+    private void render() {
+        renderPending.set(false);
+        renderer.accept(latest.get());
+    }
+}
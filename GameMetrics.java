@@ -0,0 +1,270 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.awt.EventQueue;
+import java.lang.management.*;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.*;
+import javax.management.openmbean.CompositeData;
+
+// Always-on runtime metrics for the windowed game: latency histograms for the key handler, moves,
+// board rendering, panel swaps and frames, EDT stall detection, GC pauses and moves per second
+// The hot paths only call LatencyHistogram.record and count moves, both lock-free and allocation-free.
+// A watchdog thread probes the EDT, keeps the rates up to date and can print a dump every few seconds;
+// everything is also published over JMX as Game2048:type=Metrics.
+public class GameMetrics implements GameMetricsMXBean {
+    private static final long PROBE_NANOS = 100_000_000L; // How often the EDT is probed
+    private static final long STALL_NANOS = 250_000_000L; // An EDT busy this long is a stall
+    private static final int STALL_STACK_FRAMES = 12; // Frames of the EDT stack printed for a stall
+
+    // One histogram as JMX sees it, times in milliseconds
+    public static final class Latency {
+        private final long count;
+        private final double mean;
+        private final double p50;
+        private final double p99;
+        private final double max;
+
+        Latency(LatencyHistogram histogram) {
+            count = histogram.getCount();
+            mean = histogram.getMeanNanos() / 1e6;
+            p50 = histogram.percentileNanos(50) / 1e6;
+            p99 = histogram.percentileNanos(99) / 1e6;
+            max = histogram.getMaxNanos() / 1e6;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return mean;
+        }
+
+        public double getP50Millis() {
+            return p50;
+        }
+
+        public double getP99Millis() {
+            return p99;
+        }
+
+        public double getMaxMillis() {
+            return max;
+        }
+    }
+
+    public final LatencyHistogram keyPressed = new LatencyHistogram("keyPressed");
+    public final LatencyHistogram move = new LatencyHistogram("move");
+    public final LatencyHistogram render = new LatencyHistogram("render"); // Snapshot or grid onto the board view
+    public final LatencyHistogram panelSwap = new LatencyHistogram("panelSwap"); // Game over and new game screens
+    public final LatencyHistogram frame = new LatencyHistogram("frame"); // Board paint, or frame interval when actively rendered
+    private final LatencyHistogram edtDelay = new LatencyHistogram("edtDelay"); // Probe posted to probe run
+    private final LatencyHistogram gcPause = new LatencyHistogram("gcPause");
+    private final LatencyHistogram[] histograms = {keyPressed, move, render, panelSwap, frame, edtDelay, gcPause};
+
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong edtStalls = new AtomicLong();
+    private final AtomicLong longestStallNanos = new AtomicLong();
+    private volatile double movesPerSecond;
+    private volatile long gcCountBase; // Collector totals at the last reset
+    private volatile long gcTimeBase;
+
+    // EDT probe: the watchdog posts probe and waits for it to run before posting it again
+    private final Runnable probe = this::probeRan;
+    private volatile long probePostedAt; // 0 while no probe is waiting
+    private volatile boolean stallReported; // The waiting probe was already counted as a stall
+    private volatile Thread edt;
+
+    private final long logIntervalNanos; // 0 = no periodic dump
+    private final Thread watchdog;
+
+    private GameMetrics(int logSeconds) {
+        logIntervalNanos = logSeconds * 1_000_000_000L;
+        watchdog = new Thread(this::watch, "metrics-watchdog");
+        watchdog.setDaemon(true);
+    }
+
+    // Create the metrics, publish them over JMX and start the watchdog; logSeconds 0 disables the log dump
+    public static GameMetrics start(int logSeconds) {
+        GameMetrics metrics = new GameMetrics(logSeconds);
+        metrics.listenForGcPauses();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("Game2048:type=Metrics"));
+        } catch (JMException e) {
+            System.err.println("Metrics not published over JMX: " + e);
+        }
+        metrics.watchdog.start();
+        return metrics;
+    }
+
+    // Called by the game loop for every move that changed the board
+    public void countMove() {
+        moves.incrementAndGet();
+    }
+
+    // Record the duration of each GC as the collectors report it
+    private void listenForGcPauses() {
+        NotificationListener listener = (notification, handback) -> {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                gcPause.record(info.getGcInfo().getDuration() * 1_000_000L);
+            }
+        };
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+    private void watch() {
+        long lastRate = System.nanoTime();
+        long lastMoves = 0;
+        long lastLog = lastRate;
+        while (true) {
+            try {
+                Thread.sleep(PROBE_NANOS / 1_000_000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            checkEdt(now);
+            if (now - lastRate >= 1_000_000_000L) {
+                long total = moves.get();
+                movesPerSecond = (total - lastMoves) * 1e9 / (now - lastRate);
+                lastMoves = total;
+                lastRate = now;
+            }
+            if (logIntervalNanos > 0 && now - lastLog >= logIntervalNanos) {
+                System.out.print(dump());
+                lastLog = now;
+            }
+        }
+    }
+
+    // Post a probe if none is waiting, or report a stall if the waiting one is overdue
+    private void checkEdt(long now) {
+        long posted = probePostedAt;
+        if (posted == 0) {
+            stallReported = false;
+            probePostedAt = now;
+            EventQueue.invokeLater(probe);
+        } else if (now - posted > STALL_NANOS && !stallReported) {
+            stallReported = true;
+            edtStalls.incrementAndGet();
+            printEdtStack(now - posted);
+        }
+    }
+
+    private void probeRan() {
+        edt = Thread.currentThread();
+        long delay = System.nanoTime() - probePostedAt;
+        edtDelay.record(delay);
+        long longest = longestStallNanos.get();
+        while (delay >= STALL_NANOS && delay > longest && !longestStallNanos.compareAndSet(longest, delay)) {
+            longest = longestStallNanos.get();
+        }
+        probePostedAt = 0;
+    }
+
+    // What the EDT is doing while it stalls, so the log shows the culprit and not just the symptom
+    private void printEdtStack(long stalledNanos) {
+        Thread thread = edt;
+        StringBuilder text = new StringBuilder(String.format("EDT stall: busy for %.0f ms", stalledNanos / 1e6));
+        if (thread != null) {
+            StackTraceElement[] stack = thread.getStackTrace();
+            for (int i = 0; i < Math.min(STALL_STACK_FRAMES, stack.length); i++) {
+                text.append(System.lineSeparator()).append("    at ").append(stack[i]);
+            }
+        }
+        System.err.println(text);
+    }
+
+    public Latency getKeyPressed() {
+        return new Latency(keyPressed);
+    }
+
+    public Latency getMove() {
+        return new Latency(move);
+    }
+
+    public Latency getRender() {
+        return new Latency(render);
+    }
+
+    public Latency getPanelSwap() {
+        return new Latency(panelSwap);
+    }
+
+    public Latency getFrame() {
+        return new Latency(frame);
+    }
+
+    public Latency getEdtDelay() {
+        return new Latency(edtDelay);
+    }
+
+    public Latency getGcPause() {
+        return new Latency(gcPause);
+    }
+
+    public long getMoves() {
+        return moves.get();
+    }
+
+    public double getMovesPerSecond() {
+        return movesPerSecond;
+    }
+
+    public long getEdtStalls() {
+        return edtStalls.get();
+    }
+
+    public double getLongestEdtStallMillis() {
+        return longestStallNanos.get() / 1e6;
+    }
+
+    public long getGcCount() {
+        return totalGcCount() - gcCountBase;
+    }
+
+    public long getGcTimeMillis() {
+        return totalGcTime() - gcTimeBase;
+    }
+
+    private static long totalGcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long totalGcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        moves.set(0);
+        edtStalls.set(0);
+        longestStallNanos.set(0);
+        gcCountBase = totalGcCount();
+        gcTimeBase = totalGcTime();
+    }
+
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Metrics: %d moves, %.1f moves/sec, %d EDT stalls (longest %.0f ms), %d GCs in %d ms%n",
+                getMoves(), movesPerSecond, getEdtStalls(), getLongestEdtStallMillis(), getGcCount(), getGcTimeMillis()));
+        for (LatencyHistogram histogram : histograms) {
+            text.append("  ").append(histogram.summary()).append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+}
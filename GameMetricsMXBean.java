@@ -0,0 +1,24 @@
+// Management interface of GameMetrics, registered as Game2048:type=Metrics
+// Latencies show up in JConsole and VisualVM as composite values of count, mean, p50, p99 and max
+public interface GameMetricsMXBean {
+    GameMetrics.Latency getKeyPressed();
+    GameMetrics.Latency getMove();
+    GameMetrics.Latency getRender();
+    GameMetrics.Latency getPanelSwap();
+    GameMetrics.Latency getFrame();
+    GameMetrics.Latency getEdtDelay();
+    GameMetrics.Latency getGcPause();
+
+    long getMoves();
+    double getMovesPerSecond();
+    long getEdtStalls();
+    double getLongestEdtStallMillis();
+    long getGcCount();
+    long getGcTimeMillis();
+
+    // Start every histogram and counter from zero
+    void reset();
+
+    // Everything above as text, the same lines the periodic log prints
+    String dump();
+}
@@ -0,0 +1,41 @@
+import java.util.Random;
+
+// java.util.Random with a readable and restorable state, so undo can put the RNG back as well
+// Same 48-bit linear congruential generator and the same seed scrambling, so a seed gives exactly
+// the numbers java.util.Random would (old replays still verify). Not thread safe: one game, one thread
+public class GameRandom extends Random {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state; // Set by setSeed, which Random's constructor calls
+
+    public GameRandom() {
+        super();
+    }
+
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed); // Clears the cached nextGaussian
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    // Current generator state, 48 bits
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
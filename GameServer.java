@@ -0,0 +1,478 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Headless game server: many independent 4x4 games over local TCP, one session per connection
+// A few event loop threads each own a Selector and the sessions on it; a session is one bitboard,
+// a score, a move count, a name and two small buffers. All sessions share one Leaderboard, seeded from
+// the ScoreStore score log (server-scores.log by default); every finished game's score is recorded
+// through the store, so it is kept on disk. A store locks its log, so the server cannot share the
+// windowed game's highscores.log while the game is running.
+// Usage: java Game2048 --serve [--port P] [--threads T] [--scores FILE]
+//
+// Line protocol, one request and one reply per line:
+//   N name      new game for a player               -> B board score over
+//   U D L R     move up, down, left, right          -> B board score over, or S if nothing moved
+//   T k         top k players                        -> T count name score name score ...
+//               (whitespace in names is sent as _)
+//   K           rank of this session's player       -> K rank players (rank -1 if not ranked)
+//   Q           close the connection
+// board is the bitboard as 16 hex digits (one tile exponent per digit, row 0 in the low digits),
+// over is 1 once no move is left; errors reply E followed by a message
+public class GameServer {
+    public static final int DEFAULT_PORT = 2048;
+    private static final int MAX_LINE = 128;
+    private static final int OUT_BYTES = 4096; // Output buffer of a session, grown for long replies
+    private static final int MAX_OUT_BYTES = 1 << 20; // Largest a reply can make it
+    private static final int PENDING_LIMIT = OUT_BYTES - 512; // Unsent bytes above which requests are refused
+    private static final int MAX_NAME = 32;
+    private static final long STATS_INTERVAL_NANOS = 10_000_000_000L;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    // One connection's game
+    private static final class Session {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+        ByteBuffer out = ByteBuffer.allocate(OUT_BYTES);
+        long board;
+        int score;
+        int moves;
+        boolean playing;
+        String player;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final ScoreStore store;
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final EventLoop[] loops;
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong sessions = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile ServerSocketChannel server; // Set while serve() accepts connections
+    private Thread stats;
+
+    public GameServer(ScoreStore store, int threads) throws IOException {
+        this.store = store;
+        for (Map.Entry<String, Integer> entry : store.bestScores().entrySet()) {
+            leaderboard.update(entry.getKey(), entry.getValue());
+        }
+        loops = new EventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        String scoresPath = "server-scores.log";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--serve": break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--scores": scoresPath = args[++i]; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: --serve [--port P] [--threads T] [--scores FILE]");
+                    return;
+            }
+        }
+        ScoreStore store;
+        try {
+            store = ScoreStore.open(scoresPath);
+        } catch (IOException e) {
+            System.err.println("Cannot open score log: " + e.getMessage());
+            return;
+        }
+        try {
+            GameServer gameServer = new GameServer(store, Math.max(1, threads));
+            // Stopped with Ctrl-C: close the sessions and write out the queued scores
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                gameServer.stop();
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+            gameServer.serve(port);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Accept connections on the calling thread and deal them out to the event loops in turn
+    public void serve(int port) throws IOException {
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            this.server = server;
+            server.bind(new InetSocketAddress("127.0.0.1", port), 1024);
+            System.out.println("Serving on 127.0.0.1:" + port + " with " + loops.length + " event loops");
+            stats = new Thread(this::printStats, "server-stats");
+            stats.setDaemon(true);
+            stats.start();
+            int next = 0;
+            while (running) {
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (ClosedChannelException e) {
+                    break; // Closed by stop()
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].add(channel);
+                next = (next + 1) % loops.length;
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    // Stop accepting, close every session and wait for the event loops to finish; the score store
+    // stays open, it belongs to the caller
+    public void stop() {
+        running = false;
+        ServerSocketChannel accepting = server;
+        if (accepting != null) {
+            try {
+                accepting.close(); // Wakes serve() out of accept()
+            } catch (IOException e) {
+                // Closed already
+            }
+        }
+        if (stats != null) {
+            stats.interrupt();
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        for (EventLoop loop : loops) {
+            if (loop.thread.isAlive() && loop.thread != Thread.currentThread()) {
+                try {
+                    loop.thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void printStats() {
+        long lastMoves = 0;
+        long last = System.nanoTime();
+        while (running) {
+            try {
+                Thread.sleep(STATS_INTERVAL_NANOS / 1_000_000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            long total = moves.get();
+            System.out.printf("Server: %d sessions, %.0f moves/sec, %d players ranked%n",
+                    sessions.get(), (total - lastMoves) * 1e9 / (now - last), leaderboard.size());
+            lastMoves = total;
+            last = now;
+        }
+    }
+
+    // A selector thread and the sessions registered with it
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+        final SplittableRandom random; // New tiles for every session on this loop
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            random = new SplittableRandom(System.nanoTime() + index);
+            thread = new Thread(this, "server-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        void add(SocketChannel channel) {
+            incoming.add(channel);
+            selector.wakeup();
+        }
+
+        public void run() {
+            try {
+                loop();
+            } finally {
+                shutdown();
+            }
+        }
+
+        private void loop() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                SocketChannel channel;
+                while ((channel = incoming.poll()) != null) {
+                    try {
+                        channel.register(selector, SelectionKey.OP_READ, new Session(channel));
+                        sessions.incrementAndGet();
+                    } catch (ClosedChannelException e) {
+                        // Client already gone
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Session session = (Session) key.attachment();
+                    try {
+                        if (key.isValid() && key.isWritable()) {
+                            flush(key, session);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key, session);
+                        }
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+            }
+        }
+
+        // Close every session on this loop and the selector itself
+        private void shutdown() {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            SocketChannel channel;
+            while ((channel = incoming.poll()) != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void read(SelectionKey key, Session session) throws IOException {
+            if (session.channel.read(session.in) < 0) {
+                close(key);
+                return;
+            }
+            ByteBuffer in = session.in;
+            in.flip();
+            int start = 0;
+            for (int i = 0; i < in.limit(); i++) {
+                if (in.get(i) == '\n') {
+                    if (session.out.position() > PENDING_LIMIT) {
+                        flush(key, session); // A long reply is waiting, give the socket a chance to take it
+                    }
+                    if (!handle(session, in, start, i)) {
+                        flush(key, session);
+                        close(key);
+                        return;
+                    }
+                    start = i + 1;
+                }
+            }
+            in.position(start);
+            in.compact();
+            if (!in.hasRemaining()) {
+                reply(session, "E line too long");
+                flush(key, session);
+                close(key);
+                return;
+            }
+            flush(key, session);
+        }
+
+        // Run one request line (bytes start to end of in), returns false to close the connection
+        private boolean handle(Session session, ByteBuffer in, int start, int end) {
+            if (end > start && in.get(end - 1) == '\r') {
+                end--;
+            }
+            if (end == start) {
+                return true;
+            }
+            if (session.out.position() > PENDING_LIMIT) {
+                reply(session, "E too many requests in flight");
+                return false;
+            }
+            byte command = in.get(start);
+            switch (command) {
+                case 'U': move(session, BitBoard.UP); return true;
+                case 'D': move(session, BitBoard.DOWN); return true;
+                case 'L': move(session, BitBoard.LEFT); return true;
+                case 'R': move(session, BitBoard.RIGHT); return true;
+                case 'N':
+                    newGame(session, argument(in, start, end));
+                    return true;
+                case 'T':
+                    top(session, argument(in, start, end));
+                    return true;
+                case 'K':
+                    int rank = session.player == null ? -1 : leaderboard.rankOf(session.player);
+                    reply(session, "K " + rank + " " + leaderboard.size());
+                    return true;
+                case 'Q':
+                    return false;
+                default:
+                    reply(session, "E unknown command");
+                    return true;
+            }
+        }
+
+        private void newGame(Session session, String name) {
+            name = name.replaceAll("\\s+", "_");
+            if (name.isEmpty()) {
+                reply(session, "E name required");
+                return;
+            }
+            session.player = name.length() > MAX_NAME ? name.substring(0, MAX_NAME) : name;
+            session.board = spawn(spawn(0));
+            session.score = 0;
+            session.moves = 0;
+            session.playing = true;
+            writeBoard(session, false);
+        }
+
+        private void move(Session session, int direction) {
+            if (!session.playing) {
+                reply(session, "E no game, send N name first");
+                return;
+            }
+            long board = session.board;
+            long moved = BitBoard.move(board, direction);
+            if (moved == board) {
+                reply(session, "S");
+                return;
+            }
+            session.score += BitBoard.moveScore(board, direction);
+            session.board = spawn(moved);
+            session.moves++;
+            moves.incrementAndGet();
+            boolean over = BitBoard.isGameOver(session.board);
+            if (over) {
+                session.playing = false;
+                leaderboard.update(session.player, session.score);
+                store.record(session.player, session.score); // Appended to the log by the store's writer thread
+            }
+            writeBoard(session, over);
+        }
+
+        // A 2 or a 4 in a random empty cell, the same odds as Game2048.addNewNumber
+        private long spawn(long board) {
+            int empty = BitBoard.emptyCount(board);
+            if (empty == 0) {
+                return board;
+            }
+            return BitBoard.placeTile(board, random.nextInt(empty), random.nextInt(2) + 1);
+        }
+
+        private void top(Session session, String argument) {
+            int k;
+            try {
+                k = Math.max(0, Math.min(100, Integer.parseInt(argument)));
+            } catch (NumberFormatException e) {
+                k = 10;
+            }
+            List<Leaderboard.Entry> entries = leaderboard.top(k);
+            StringBuilder text = new StringBuilder("T ").append(entries.size());
+            for (Leaderboard.Entry entry : entries) {
+                text.append(' ').append(entry.player.replaceAll("\\s+", "_")).append(' ').append(entry.score);
+            }
+            reply(session, text.toString());
+        }
+
+        // "B <board hex> <score> <over>", written straight into the buffer
+        private void writeBoard(Session session, boolean over) {
+            ByteBuffer out = session.out;
+            out.put((byte) 'B').put((byte) ' ');
+            long board = session.board;
+            for (int shift = 60; shift >= 0; shift -= 4) {
+                out.put(HEX[(int) ((board >>> shift) & 0xF)]);
+            }
+            out.put((byte) ' ');
+            putInt(out, session.score);
+            out.put((byte) ' ').put((byte) (over ? '1' : '0')).put((byte) '\n');
+        }
+
+        private void putInt(ByteBuffer out, int value) {
+            if (value >= 10) {
+                putInt(out, value / 10);
+            }
+            out.put((byte) ('0' + value % 10));
+        }
+
+        // Queue a reply line, growing the session's buffer if it does not fit; a reply too long for even
+        // the largest buffer is replaced by an error, so the client is never left waiting
+        private void reply(Session session, String line) {
+            byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer out = session.out;
+            if (bytes.length > out.remaining()) {
+                int needed = out.position() + bytes.length;
+                if (needed > MAX_OUT_BYTES) {
+                    bytes = "E reply too long\n".getBytes(StandardCharsets.US_ASCII);
+                    needed = out.position() + bytes.length;
+                }
+                if (needed > out.capacity()) {
+                    ByteBuffer grown = ByteBuffer.allocate(Math.max(needed, Integer.highestOneBit(needed - 1) << 1));
+                    out.flip();
+                    session.out = out = grown.put(out);
+                }
+            }
+            out.put(bytes);
+        }
+
+        private String argument(ByteBuffer in, int start, int end) {
+            byte[] bytes = new byte[Math.max(0, end - start - 1)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = in.get(start + 1 + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8).trim();
+        }
+
+        // Send what is buffered, waiting for OP_WRITE if the socket cannot take it all now
+        private void flush(SelectionKey key, Session session) throws IOException {
+            ByteBuffer out = session.out;
+            out.flip();
+            session.channel.write(out);
+            out.compact();
+            if (out.position() == 0 && out.capacity() > OUT_BYTES) {
+                session.out = ByteBuffer.allocate(OUT_BYTES); // Drop the buffer grown for a long reply
+            }
+            key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        private void close(SelectionKey key) {
+            if (!key.channel().isOpen()) {
+                return; // Closed already
+            }
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            sessions.decrementAndGet();
+        }
+    }
+}
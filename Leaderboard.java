@@ -0,0 +1,208 @@
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Ranked best scores: a treap ordered by score (highest first, then name) whose nodes know their
+// subtree size, so insert/update, rank-of-player and top-K are all O(log n) (plus K for the listing)
+// Safe to use from several threads: queries share a read lock, updates take the write lock
+public class Leaderboard {
+    // One player's best score
+    public static final class Entry {
+        public final String player;
+        public final int score;
+
+        Entry(String player, int score) {
+            this.player = player;
+            this.score = score;
+        }
+    }
+
+    private static final class Node {
+        final String player;
+        final int score;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(String player, int score, int priority) {
+            this.player = player;
+            this.score = score;
+            this.priority = priority;
+        }
+    }
+
+    private final Map<String, Integer> scores = new HashMap<>(); // Player to the score stored in the tree
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SplittableRandom priorities = new SplittableRandom(2048);
+    private Node root;
+
+    // Record a score, keeping only the player's best; returns true if the board changed
+    public boolean update(String player, int score) {
+        lock.writeLock().lock();
+        try {
+            Integer old = scores.get(player);
+            if (old != null && old >= score) {
+                return false;
+            }
+            if (old != null) {
+                root = remove(root, player, old);
+            }
+            scores.put(player, score);
+            root = insert(root, new Node(player, score, priorities.nextInt()));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return scores.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Integer scoreOf(String player) {
+        lock.readLock().lock();
+        try {
+            return scores.get(player);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 1-based rank of the player, or -1 if the player has no score
+    public int rankOf(String player) {
+        lock.readLock().lock();
+        try {
+            Integer score = scores.get(player);
+            if (score == null) {
+                return -1;
+            }
+            int before = 0;
+            Node node = root;
+            while (node != null) {
+                int order = compare(player, score, node);
+                if (order < 0) {
+                    node = node.left;
+                } else if (order > 0) {
+                    before += size(node.left) + 1;
+                    node = node.right;
+                } else {
+                    return before + size(node.left) + 1;
+                }
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The k best players, best first
+    public List<Entry> top(int k) {
+        lock.readLock().lock();
+        try {
+            List<Entry> result = new ArrayList<>(Math.min(k, scores.size()));
+            Deque<Node> stack = new ArrayDeque<>();
+            Node node = root;
+            while ((node != null || !stack.isEmpty()) && result.size() < k) {
+                while (node != null) {
+                    stack.push(node);
+                    node = node.left;
+                }
+                node = stack.pop();
+                result.add(new Entry(node.player, node.score));
+                node = node.right;
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Negative if (player, score) ranks before the node
+    private static int compare(String player, int score, Node node) {
+        if (score != node.score) {
+            return score > node.score ? -1 : 1;
+        }
+        return player.compareTo(node.player);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.priority > node.priority) {
+            // The new node becomes the root of this subtree
+            Node[] parts = split(node, added.player, added.score);
+            added.left = parts[0];
+            added.right = parts[1];
+            return update(added);
+        }
+        if (compare(added.player, added.score, node) < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return update(node);
+    }
+
+    // Split into the nodes ranking before (player, score) and the rest
+    private static Node[] split(Node node, String player, int score) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(player, score, node) <= 0) {
+            Node[] parts = split(node.left, player, score);
+            node.left = parts[1];
+            parts[1] = update(node);
+            return parts;
+        }
+        Node[] parts = split(node.right, player, score);
+        node.right = parts[0];
+        parts[0] = update(node);
+        return parts;
+    }
+
+    private static Node remove(Node node, String player, int score) {
+        if (node == null) {
+            return null;
+        }
+        int order = compare(player, score, node);
+        if (order < 0) {
+            node.left = remove(node.left, player, score);
+        } else if (order > 0) {
+            node.right = remove(node.right, player, score);
+        } else {
+            return merge(node.left, node.right);
+        }
+        return update(node);
+    }
+
+    // Join two treaps where every node of a ranks before every node of b
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            return update(a);
+        }
+        b.left = merge(a, b.left);
+        return update(b);
+    }
+}
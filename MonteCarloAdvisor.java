@@ -0,0 +1,193 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Monte Carlo player: for each legal direction, play many random games to the end from the board
+// after that move and pick the direction whose games scored the most on average
+// Rollouts run as fork-join tasks until the time budget is spent. Each task cycles through the legal
+// directions so they all get about the same number of games whenever the clock or a cancel stops it.
+// 4x4 boards are played on the BitBoard engine; other sizes (or tiles above 32768) on a headless
+// Game2048, with the same slide and spawn rules.
+public class MonteCarloAdvisor implements MovePolicy {
+    private static final int MAX_ROLLOUT_MOVES = 1000; // Random games on big boards can run for a very long time
+    private static final AtomicBoolean NEVER_CANCELLED = new AtomicBoolean();
+
+    private final long timeBudgetNanos;
+    private final boolean parallel;
+    private final AtomicLong totalRollouts = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public MonteCarloAdvisor(long timeBudgetMillis, boolean parallel) {
+        this.timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+        this.parallel = parallel;
+    }
+
+    public int chooseMove(int[][] grid, Random random) {
+        int move = bestMove(grid, NEVER_CANCELLED);
+        return move < 0 ? random.nextInt(4) : move;
+    }
+
+    // Best direction for the grid, or -1 if no move changes it or cancelled was set before any rollout finished
+    public int bestMove(int[][] grid, AtomicBoolean cancelled) {
+        long start = System.nanoTime();
+        long deadline = start + timeBudgetNanos;
+        int size = grid.length;
+        boolean bitboard = BitBoard.fits(grid);
+        long board = bitboard ? BitBoard.fromGrid(grid) : 0;
+
+        // Legal first moves, found on a scratch game when the board does not fit a bitboard
+        int[] legal = new int[4];
+        int legalCount = 0;
+        Game2048 probe = bitboard ? null : new Game2048(new GameRandom(), size);
+        for (int direction = 0; direction < 4; direction++) {
+            boolean moves;
+            if (bitboard) {
+                moves = BitBoard.move(board, direction) != board;
+            } else {
+                probe.setGrid(grid);
+                moves = probe.move(direction);
+            }
+            if (moves) {
+                legal[legalCount++] = direction;
+            }
+        }
+        if (legalCount <= 1) {
+            return legalCount == 0 ? -1 : legal[0];
+        }
+
+        int tasks = parallel ? ForkJoinPool.getCommonPoolParallelism() : 1;
+        List<Rollouts> rollouts = new ArrayList<>(tasks);
+        SplittableRandom seeds = new SplittableRandom();
+        for (int t = 0; t < tasks; t++) {
+            rollouts.add(new Rollouts(grid, bitboard, board, legal, legalCount, t, deadline, cancelled, seeds.split()));
+        }
+        if (parallel) {
+            ForkJoinTask.invokeAll(rollouts);
+        } else {
+            rollouts.get(0).invoke();
+        }
+
+        long[] sums = new long[4];
+        long[] counts = new long[4];
+        long games = 0;
+        for (Rollouts task : rollouts) {
+            for (int k = 0; k < legalCount; k++) {
+                sums[k] += task.sums[k];
+                counts[k] += task.counts[k];
+            }
+            games += task.games;
+        }
+        totalRollouts.addAndGet(games);
+        totalNanos.addAndGet(System.nanoTime() - start);
+        if (games == 0 || cancelled.get()) {
+            return -1;
+        }
+
+        int best = -1;
+        double bestAverage = -1;
+        for (int k = 0; k < legalCount; k++) {
+            double average = counts[k] == 0 ? 0 : sums[k] / (double) counts[k];
+            if (average > bestAverage) {
+                bestAverage = average;
+                best = legal[k];
+            }
+        }
+        return best;
+    }
+
+    public long getTotalRollouts() {
+        return totalRollouts.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    // Rollouts per second of search time, over every decision so far
+    public double getRolloutsPerSecond() {
+        long nanos = totalNanos.get();
+        return nanos == 0 ? 0 : totalRollouts.get() * 1e9 / nanos;
+    }
+
+    // One worker's share of the rollouts, cycling through the legal directions until time runs out
+    private static class Rollouts extends RecursiveAction {
+        final int[][] grid;
+        final boolean bitboard;
+        final long board;
+        final int[] legal;
+        final int legalCount;
+        final int first; // Direction index this task starts with, so short budgets still cover every move
+        final long deadline;
+        final AtomicBoolean cancelled;
+        final SplittableRandom random;
+        final long[] sums = new long[4]; // Score gained, per legal direction index
+        final long[] counts = new long[4];
+        long games;
+
+        Rollouts(int[][] grid, boolean bitboard, long board, int[] legal, int legalCount, int first,
+                long deadline, AtomicBoolean cancelled, SplittableRandom random) {
+            this.grid = grid;
+            this.bitboard = bitboard;
+            this.board = board;
+            this.legal = legal;
+            this.legalCount = legalCount;
+            this.first = first;
+            this.deadline = deadline;
+            this.cancelled = cancelled;
+            this.random = random;
+        }
+
+        protected void compute() {
+            Game2048 game = bitboard ? null : new Game2048(new GameRandom(random.nextLong()), grid.length);
+            int k = first % legalCount;
+            do {
+                sums[k] += bitboard ? playBitBoard(legal[k]) : playGame(game, legal[k]);
+                counts[k]++;
+                games++;
+                k = k + 1 == legalCount ? 0 : k + 1;
+            } while (System.nanoTime() < deadline && !cancelled.get());
+        }
+
+        // Score of one random game on the bitboard after the first move, with spawns as in addNewNumber
+        private int playBitBoard(int direction) {
+            long current = board;
+            int score = 0;
+            for (int moves = 0; moves < MAX_ROLLOUT_MOVES; moves++) {
+                long moved = BitBoard.move(current, direction); // Always a legal move, so at least one cell is empty
+                score += BitBoard.moveScore(current, direction);
+                current = BitBoard.placeTile(moved, random.nextInt(BitBoard.emptyCount(moved)), random.nextInt(2) + 1);
+                direction = randomLegalMove(current);
+                if (direction < 0) {
+                    break;
+                }
+            }
+            return score;
+        }
+
+        // A random direction that changes the board, or -1 if none does
+        private int randomLegalMove(long current) {
+            int start = random.nextInt(4);
+            for (int k = 0; k < 4; k++) {
+                int direction = (start + k) & 3;
+                if (BitBoard.move(current, direction) != current) {
+                    return direction;
+                }
+            }
+            return -1;
+        }
+
+        // Same as playBitBoard through the regular game methods, for any board size
+        private int playGame(Game2048 game, int direction) {
+            game.setGrid(grid);
+            int scoreBefore = game.getScore();
+            game.move(direction);
+            for (int moves = 1; moves < MAX_ROLLOUT_MOVES && !game.isGameOver(); moves++) {
+                int start = random.nextInt(4);
+                for (int k = 0; k < 4 && !game.move((start + k) & 3); k++) {
+                }
+            }
+            return game.getScore() - scoreBefore;
+        }
+    }
+}
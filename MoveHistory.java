@@ -0,0 +1,145 @@
+// Undo/redo history: a fixed-capacity ring of board states held in flat primitive arrays
+// Each state is the grid as one exponent byte per cell, the order of the empty cell list (spawns pick
+// from it by index, so it is part of the state), the score, the RNG state and the move that led to it.
+// Everything is allocated up front, so recording and restoring never allocate, and the memory used is
+// exactly getMemoryBytes(). When the ring is full the oldest state is overwritten.
+public class MoveHistory {
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    private final int cells; // Cells per board
+    private final int capacity; // States kept, including the current one
+    private final byte[] boards; // capacity * cells tile exponents
+    private final char[] freeLists; // capacity * cells empty cell indexes, in list order
+    private final int[] scores;
+    private final long[] rngStates;
+    private final byte[] directions; // Move that produced each state, -1 for the start of a game
+    private int first; // Ring index of the oldest state
+    private int length; // States stored, the ones after current can be redone
+    private int current = -1; // Offset from first of the state on the board
+
+    public MoveHistory(int capacity, int cells) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("History needs room for at least two states: " + capacity);
+        }
+        this.cells = cells;
+        this.capacity = Math.min(capacity, MAX_ARRAY / cells);
+        boards = new byte[this.capacity * cells];
+        freeLists = new char[this.capacity * cells];
+        scores = new int[this.capacity];
+        rngStates = new long[this.capacity];
+        directions = new byte[this.capacity];
+    }
+
+    // Forget everything, for a new game
+    public void clear() {
+        first = 0;
+        length = 0;
+        current = -1;
+    }
+
+    // Store the state after a move (or a new game, direction -1), dropping anything that could be redone
+    public void record(int[][] grid, int[] freeCells, int freeCount, int score, long rngState, int direction) {
+        length = current + 1;
+        if (length == capacity) {
+            first = (first + 1) % capacity;
+            length--;
+        }
+        int slot = (first + length) % capacity;
+        int offset = slot * cells;
+        int size = grid.length;
+        for (int i = 0; i < size; i++) {
+            int[] row = grid[i];
+            for (int j = 0; j < size; j++) {
+                boards[offset++] = (byte) BitBoard.exponentOf(row[j]);
+            }
+        }
+        offset = slot * cells;
+        for (int k = 0; k < freeCount; k++) {
+            freeLists[offset + k] = (char) freeCells[k];
+        }
+        scores[slot] = score;
+        rngStates[slot] = rngState;
+        directions[slot] = (byte) direction;
+        current = length++;
+    }
+
+    public boolean canUndo() {
+        return current > 0;
+    }
+
+    public boolean canRedo() {
+        return current < length - 1;
+    }
+
+    // Step back one state, returns false if there is none; read it with restore()
+    public boolean undo() {
+        if (!canUndo()) {
+            return false;
+        }
+        current--;
+        return true;
+    }
+
+    // Step forward to a state that was undone, returns false if there is none
+    public boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }
+        current++;
+        return true;
+    }
+
+    // Copy the current state's tiles into grid and its empty cell list into freeCells,
+    // returns the number of empty cells
+    public int restore(int[][] grid, int[] freeCells) {
+        int start = slot() * cells;
+        int offset = start;
+        int freeCount = 0;
+        int size = grid.length;
+        for (int i = 0; i < size; i++) {
+            int[] row = grid[i];
+            for (int j = 0; j < size; j++) {
+                int exponent = boards[offset++];
+                row[j] = exponent == 0 ? 0 : 1 << exponent;
+                if (exponent == 0) {
+                    freeCount++;
+                }
+            }
+        }
+        for (int k = 0; k < freeCount; k++) {
+            freeCells[k] = freeLists[start + k];
+        }
+        return freeCount;
+    }
+
+    public int getScore() {
+        return scores[slot()];
+    }
+
+    public long getRngState() {
+        return rngStates[slot()];
+    }
+
+    // Move that led to the current state, -1 if it is the start of the game
+    public int getDirection() {
+        return directions[slot()];
+    }
+
+    // States that can be undone from the current one
+    public int getUndoDepth() {
+        return Math.max(0, current);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Bytes held by the ring, fixed when it is created
+    public long getMemoryBytes() {
+        return (long) capacity * (cells * (1 + Character.BYTES) + Integer.BYTES + Long.BYTES + 1);
+    }
+
+    private int slot() {
+        return (first + current) % capacity;
+    }
+}
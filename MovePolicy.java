@@ -0,0 +1,6 @@
+import java.util.Random;
+
+// Strategy that picks the next direction (a BitBoard direction constant) for a grid
+public interface MovePolicy {
+    int chooseMove(int[][] grid, Random random);
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Random;
+
+// N-tuple value network over 4x4 bitboards: a few fixed groups of cells ("tuples"), each with a
+// table holding one weight per combination of tile exponents in its cells. A board's value is the sum
+// of the weights its tuples select, taken over all 8 rotations and reflections of every tuple.
+// Values estimate the score still to come from an afterstate (a board just moved, before the spawn),
+// so the network plays by picking the move with the highest points + value.
+// Weights live in one float[] while training; a trained network is saved to a little-endian file that
+// load() maps read-only, so a player can start on a network of hundreds of MiB without reading it.
+// File layout: int magic, int version, int tuple count, then per tuple an int length and its cell
+// indexes, then every weight as a float, tuple after tuple.
+public class NTupleNetwork implements MovePolicy {
+    private static final int MAGIC = 0x4E545550; // "NTUP"
+    private static final int VERSION = 1;
+    private static final int WRITE_CHUNK_FLOATS = 1 << 18;
+
+    // Cell indexes are row-major, 0 is the top left corner
+    public static final int[][] SMALL_TUPLES = { // Rows and 2x2 squares, 5 x 2^16 weights (1.25 MiB)
+            {0, 1, 2, 3}, {4, 5, 6, 7}, {0, 1, 4, 5}, {1, 2, 5, 6}, {5, 6, 9, 10}};
+    public static final int[][] LARGE_TUPLES = { // Two straight and two bent 6-tuples, 4 x 2^24 weights (256 MiB)
+            {0, 1, 2, 3, 4, 5}, {4, 5, 6, 7, 8, 9}, {0, 1, 2, 4, 5, 6}, {4, 5, 6, 8, 9, 10}};
+
+    private final int[][] tuples;
+    private final int[][] featureShifts; // [tuple * 8 + symmetry][position] = bit offset of the cell in the board
+    private final int[] featureBase; // Start of the feature's tuple table within the weights
+    private final float[] weights; // Null when the network is a read-only mapped file
+    private final FloatBuffer table; // Every weight: a view of the array, or the mapped file
+
+    // A fresh network with every weight zero, ready to train
+    public NTupleNetwork(int[][] tuples) {
+        this(tuples, new float[weightCount(tuples)]);
+    }
+
+    private NTupleNetwork(int[][] tuples, float[] weights) {
+        this(tuples, weights, FloatBuffer.wrap(weights));
+    }
+
+    private NTupleNetwork(int[][] tuples, float[] weights, FloatBuffer table) {
+        this.tuples = tuples;
+        this.weights = weights;
+        this.table = table;
+        featureShifts = new int[tuples.length * 8][];
+        featureBase = new int[tuples.length * 8];
+        int base = 0;
+        for (int t = 0; t < tuples.length; t++) {
+            for (int s = 0; s < 8; s++) {
+                int[] shifts = new int[tuples[t].length];
+                for (int p = 0; p < shifts.length; p++) {
+                    int row = tuples[t][p] / 4;
+                    int col = tuples[t][p] % 4;
+                    // Same symmetry numbering as StateExplorer: bit 0 mirrors columns, bit 1 rows, bit 2 transposes
+                    int r = (s & 2) != 0 ? 3 - row : row;
+                    int c = (s & 1) != 0 ? 3 - col : col;
+                    shifts[p] = 4 * ((s & 4) != 0 ? c * 4 + r : r * 4 + c);
+                }
+                featureShifts[t * 8 + s] = shifts;
+                featureBase[t * 8 + s] = base;
+            }
+            base += 1 << (4 * tuples[t].length);
+        }
+    }
+
+    private static int weightCount(int[][] tuples) {
+        long count = 0;
+        for (int[] tuple : tuples) {
+            if (tuple.length < 1 || tuple.length > 7) {
+                throw new IllegalArgumentException("Tuples must have 1 to 7 cells: " + tuple.length);
+            }
+            count += 1L << (4 * tuple.length);
+        }
+        if (count > Integer.MAX_VALUE / Float.BYTES) {
+            throw new IllegalArgumentException("Too many weights for one table: " + count);
+        }
+        return (int) count;
+    }
+
+    // Estimated score still to come from the afterstate
+    public float evaluate(long board) {
+        float value = 0;
+        for (int f = 0; f < featureShifts.length; f++) {
+            value += table.get(featureBase[f] + index(board, featureShifts[f]));
+        }
+        return value;
+    }
+
+    // Move every weight the board selects by delta, shared out across the features; no locking, so
+    // threads training together may now and then lose each other's update to the same weight
+    public void update(long board, float delta) {
+        if (weights == null) {
+            throw new IllegalStateException("A mapped network is read-only");
+        }
+        float share = delta / featureShifts.length;
+        for (int f = 0; f < featureShifts.length; f++) {
+            weights[featureBase[f] + index(board, featureShifts[f])] += share;
+        }
+    }
+
+    private static int index(long board, int[] shifts) {
+        int index = 0;
+        for (int shift : shifts) {
+            index = index << 4 | (int) ((board >>> shift) & 0xF);
+        }
+        return index;
+    }
+
+    // A board past BitBoard.MAX_TILE cannot be evaluated, it gets a random move
+    public int chooseMove(int[][] grid, Random random) {
+        if (!BitBoard.fits(grid)) {
+            return random.nextInt(4);
+        }
+        int move = bestMove(BitBoard.fromGrid(grid));
+        return move < 0 ? random.nextInt(4) : move;
+    }
+
+    // Direction with the highest points + afterstate value, or -1 if no move changes the board
+    public int bestMove(long board) {
+        int best = -1;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        for (int direction = 0; direction < 4; direction++) {
+            long moved = BitBoard.move(board, direction);
+            if (moved != board) {
+                float value = BitBoard.moveScore(board, direction) + evaluate(moved);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = direction;
+                }
+            }
+        }
+        return best;
+    }
+
+    public int[][] getTuples() {
+        return tuples;
+    }
+
+    public long getWeightBytes() {
+        return (long) table.capacity() * Float.BYTES;
+    }
+
+    // Write the network to a temporary file next to path, then rename it over path
+    public void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(headerBytes(tuples)).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(tuples.length);
+            for (int[] tuple : tuples) {
+                header.putInt(tuple.length);
+                for (int cell : tuple) {
+                    header.putInt(cell);
+                }
+            }
+            writeFully(out, header.flip());
+            ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_CHUNK_FLOATS * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            FloatBuffer floats = chunk.asFloatBuffer();
+            for (int from = 0, count = table.capacity(); from < count; from += WRITE_CHUNK_FLOATS) {
+                int length = Math.min(WRITE_CHUNK_FLOATS, count - from);
+                floats.clear();
+                floats.put(table.duplicate().position(from).limit(from + length));
+                chunk.clear().limit(length * Float.BYTES);
+                writeFully(out, chunk);
+            }
+            out.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static int headerBytes(int[][] tuples) {
+        int ints = 3;
+        for (int[] tuple : tuples) {
+            ints += 1 + tuple.length;
+        }
+        return ints * Integer.BYTES;
+    }
+
+    // Map a saved network read-only; the mapping stays valid after the file is closed
+    public static NTupleNetwork load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Weight file too large to map: " + path);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (size < 12 || map.getInt() != MAGIC || map.getInt() != VERSION) {
+                throw new IOException("Not an n-tuple weight file: " + path);
+            }
+            int count = map.getInt();
+            if (count < 1 || count > 64) {
+                throw new IOException("Bad tuple count " + count + " in " + path);
+            }
+            int[][] tuples = new int[count][];
+            for (int t = 0; t < count; t++) {
+                int length = map.getInt();
+                if (length < 1 || length > 7) {
+                    throw new IOException("Bad tuple length " + length + " in " + path);
+                }
+                tuples[t] = new int[length];
+                for (int p = 0; p < length; p++) {
+                    int cell = map.getInt();
+                    if (cell < 0 || cell > 15) {
+                        throw new IOException("Bad cell " + cell + " in " + path);
+                    }
+                    tuples[t][p] = cell;
+                }
+            }
+            FloatBuffer table = map.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            if (table.capacity() != weightCount(tuples)) {
+                throw new IOException("Weight file has " + table.capacity() + " weights, expected " + weightCount(tuples) + ": " + path);
+            }
+            return new NTupleNetwork(tuples, null, table);
+        }
+    }
+
+    // A trainable copy of this network, to carry on training from a saved file
+    public NTupleNetwork copy() {
+        float[] copy = new float[table.capacity()];
+        table.duplicate().clear().get(copy);
+        return new NTupleNetwork(tuples, copy);
+    }
+}
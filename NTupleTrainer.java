@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Self-play trainer for NTupleNetwork by temporal-difference learning on afterstates
+// Every worker plays whole games on the BitBoard engine with the spawn rule of Game2048.addNewNumber,
+// always taking the move the network rates best. After each move the value of the previous afterstate
+// is pulled toward the points just won plus the value of the new afterstate (TD(0)); the last one of a
+// game is pulled toward 0. Workers share one float[] and update it without locks (Hogwild): the
+// updates are small and rarely hit the same weight at once, so a lost update costs almost nothing.
+// Prints the learning curve (mean score and 2048 rate) and games/sec every --report games.
+// Usage: java Game2048 --train [--games N] [--threads T] [--alpha A] [--tuples small|large]
+//        [--weights FILE] [--resume] [--report N] [--seed S]
+public class NTupleTrainer {
+    private final NTupleNetwork network;
+    private final float alpha;
+    private final long games;
+    private final long reportEvery;
+    private final AtomicLong nextGame = new AtomicLong();
+    private final AtomicLong finishedGames = new AtomicLong();
+    private final AtomicLong totalMoves = new AtomicLong();
+
+    // Statistics since the last report
+    private final LongAdder windowScore = new LongAdder();
+    private final LongAdder windowMoves = new LongAdder();
+    private final LongAdder windowReached2048 = new LongAdder();
+    private final LongAccumulator windowMaxExponent = new LongAccumulator(Math::max, 0);
+    private final AtomicLong windowStart = new AtomicLong();
+
+    public NTupleTrainer(NTupleNetwork network, float alpha, long games, long reportEvery) {
+        this.network = network;
+        this.alpha = alpha;
+        this.games = games;
+        this.reportEvery = Math.max(1, reportEvery);
+    }
+
+    public static void main(String[] args) {
+        long games = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        float alpha = 0.1f;
+        String tupleSet = "small";
+        Path weights = Paths.get("ntuple.weights");
+        boolean resume = false;
+        long reportEvery = 1000;
+        long seed = System.nanoTime();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--train": break;
+                case "--games": games = Long.parseLong(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--alpha": alpha = Float.parseFloat(args[++i]); break;
+                case "--tuples": tupleSet = args[++i]; break;
+                case "--weights": weights = Paths.get(args[++i]); break;
+                case "--resume": resume = true; break;
+                case "--report": reportEvery = Long.parseLong(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: --train [--games N] [--threads T] [--alpha A] [--tuples small|large] [--weights FILE] [--resume] [--report N] [--seed S]");
+                    return;
+            }
+        }
+        if (!tupleSet.equals("small") && !tupleSet.equals("large")) {
+            System.err.println("Unknown tuple set: " + tupleSet + " (small or large)");
+            return;
+        }
+
+        try {
+            NTupleNetwork network;
+            if (resume && Files.exists(weights)) {
+                network = NTupleNetwork.load(weights).copy();
+                System.out.println("Resuming from " + weights);
+            } else {
+                network = new NTupleNetwork(tupleSet.equals("small") ? NTupleNetwork.SMALL_TUPLES : NTupleNetwork.LARGE_TUPLES);
+            }
+            threads = (int) Math.max(1, Math.min(threads, games));
+            System.out.printf("Training %,d games on %d threads, %d tuples (%d MiB of weights), alpha %.4f (seed %d)%n",
+                    games, threads, network.getTuples().length, network.getWeightBytes() >> 20, alpha, seed);
+            new NTupleTrainer(network, alpha, games, reportEvery).train(threads, seed);
+            network.save(weights);
+            System.out.println("Saved weights to " + weights);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Training stopped: " + e.getMessage());
+        }
+    }
+
+    // Play every game across the given number of threads and wait for them
+    public void train(int threads, long seed) {
+        long start = System.nanoTime();
+        windowStart.set(start);
+        SplittableRandom seeds = new SplittableRandom(seed);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = seeds.split();
+            workers[t] = new Thread(() -> runWorker(random), "ntuple-trainer-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Trained %,d games (%,d moves) in %.1f s: %,.0f games/sec, %,.0f moves/sec%n",
+                finishedGames.get(), totalMoves.get(), seconds, finishedGames.get() / seconds, totalMoves.get() / seconds);
+    }
+
+    private void runWorker(SplittableRandom random) {
+        while (nextGame.getAndIncrement() < games) {
+            playAndLearn(random);
+        }
+    }
+
+    // One game of self-play, learning after every move
+    private void playAndLearn(SplittableRandom random) {
+        long board = spawn(spawn(0, random), random);
+        long previous = 0; // Afterstate of the last move, 0 before the first move
+        int score = 0;
+        int moves = 0;
+        while (true) {
+            int direction = -1;
+            float bestValue = Float.NEGATIVE_INFINITY;
+            long bestAfter = 0;
+            int bestPoints = 0;
+            for (int d = 0; d < 4; d++) {
+                long moved = BitBoard.move(board, d);
+                if (moved != board) {
+                    int points = BitBoard.moveScore(board, d);
+                    float value = points + network.evaluate(moved);
+                    if (value > bestValue) {
+                        bestValue = value;
+                        direction = d;
+                        bestAfter = moved;
+                        bestPoints = points;
+                    }
+                }
+            }
+            if (direction < 0) {
+                if (previous != 0) {
+                    network.update(previous, alpha * -network.evaluate(previous));
+                }
+                break;
+            }
+            if (previous != 0) {
+                network.update(previous, alpha * (bestValue - network.evaluate(previous)));
+            }
+            previous = bestAfter;
+            score += bestPoints;
+            moves++;
+            board = spawn(bestAfter, random);
+        }
+        finishGame(board, score, moves);
+    }
+
+    // Add a 2 or a 4 to a uniformly chosen empty cell, as Game2048.addNewNumber does
+    private static long spawn(long board, SplittableRandom random) {
+        return BitBoard.placeTile(board, random.nextInt(BitBoard.emptyCount(board)), random.nextInt(2) + 1);
+    }
+
+    private void finishGame(long board, int score, int moves) {
+        int maxExponent = 0;
+        for (int shift = 0; shift < 64; shift += 4) {
+            maxExponent = Math.max(maxExponent, (int) ((board >>> shift) & 0xF));
+        }
+        windowScore.add(score);
+        windowMoves.add(moves);
+        windowMaxExponent.accumulate(maxExponent);
+        if (maxExponent >= 11) {
+            windowReached2048.increment();
+        }
+        totalMoves.addAndGet(moves);
+        long finished = finishedGames.incrementAndGet();
+        if (finished % reportEvery == 0) {
+            report(finished);
+        }
+    }
+
+    // One point of the learning curve; games finishing on other threads meanwhile may land in either window
+    private void report(long finished) {
+        long now = System.nanoTime();
+        double seconds = (now - windowStart.getAndSet(now)) / 1e9;
+        long score = windowScore.sumThenReset();
+        long moves = windowMoves.sumThenReset();
+        long reached = windowReached2048.sumThenReset();
+        int maxExponent = (int) windowMaxExponent.getThenReset();
+        System.out.printf("Games %,12d: mean score %9.1f, 2048 reached %5.1f%%, max tile %5d, %,8.0f games/sec, %,10.0f moves/sec%n",
+                finished, (double) score / reportEvery, 100.0 * reached / reportEvery, 1 << maxExponent,
+                reportEvery / seconds, moves / seconds);
+    }
+}
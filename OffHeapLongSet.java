@@ -0,0 +1,144 @@
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.function.LongConsumer;
+
+// Open-addressing hash set of non-zero longs stored outside the Java heap
+// Slots live in direct buffers of up to 2^27 longs (1 GiB) each, so the table can hold billions of
+// keys and the GC never sees them. Linear probing, 0 marks an empty slot; the table doubles when it
+// is three quarters full, as long as the byte budget allows. The budget is a hard cap: an add that
+// would need a bigger table throws IllegalStateException and leaves the set as it was.
+// Close the set to free its memory at once; the old table is freed the same way on every doubling.
+public class OffHeapLongSet implements Closeable {
+    private static final int SEGMENT_BITS = 27;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final long maxBytes;
+    private ByteBuffer[] buffers; // As allocated, for DirectBuffers.release
+    private LongBuffer[] segments; // Long views of buffers
+    private long capacity; // Slots, a power of two
+    private long mask;
+    private long size;
+    private long resizeAt;
+
+    // Start with initialCapacity slots (rounded up to a power of two), never grow past maxBytes
+    public OffHeapLongSet(long initialCapacity, long maxBytes) {
+        this.maxBytes = maxBytes;
+        allocate(Math.max(1024, Long.highestOneBit(Math.max(1, initialCapacity - 1)) << 1));
+    }
+
+    private void allocate(long slots) {
+        if (slots * Long.BYTES > maxBytes) {
+            throw new IllegalStateException(String.format("State set needs %d MiB, over its %d MiB budget",
+                    slots * Long.BYTES >> 20, maxBytes >> 20));
+        }
+        capacity = slots;
+        mask = slots - 1;
+        resizeAt = slots / 4 * 3;
+        int segmentSlots = (int) Math.min(slots, 1L << SEGMENT_BITS);
+        buffers = new ByteBuffer[(int) (slots / segmentSlots)];
+        segments = new LongBuffer[buffers.length];
+        for (int i = 0; i < segments.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(segmentSlots * Long.BYTES).order(ByteOrder.nativeOrder());
+            segments[i] = buffers[i].asLongBuffer();
+        }
+    }
+
+    // Adds key (which must not be 0), returns true if it was not already present
+    public boolean add(long key) {
+        if (size >= resizeAt) {
+            grow();
+        }
+        for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            LongBuffer segment = segments[(int) (slot >>> SEGMENT_BITS)];
+            int index = (int) (slot & SEGMENT_MASK);
+            long present = segment.get(index);
+            if (present == 0) {
+                segment.put(index, key);
+                size++;
+                return true;
+            }
+            if (present == key) {
+                return false;
+            }
+        }
+    }
+
+    public boolean contains(long key) {
+        for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            long present = segments[(int) (slot >>> SEGMENT_BITS)].get((int) (slot & SEGMENT_MASK));
+            if (present == 0) {
+                return false;
+            }
+            if (present == key) {
+                return true;
+            }
+        }
+    }
+
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    // Double the table, moving every key across, then free the old one
+    private void grow() {
+        ByteBuffer[] oldBuffers = buffers;
+        LongBuffer[] old = segments;
+        allocate(capacity * 2);
+        size = 0;
+        for (LongBuffer segment : old) {
+            for (int i = 0, n = segment.capacity(); i < n; i++) {
+                long key = segment.get(i);
+                if (key != 0) {
+                    add(key);
+                }
+            }
+        }
+        release(oldBuffers);
+    }
+
+    // Every key, in table order
+    public void forEach(LongConsumer action) {
+        for (LongBuffer segment : segments) {
+            for (int i = 0, n = segment.capacity(); i < n; i++) {
+                long key = segment.get(i);
+                if (key != 0) {
+                    action.accept(key);
+                }
+            }
+        }
+    }
+
+    // Empty the set, keeping its memory for reuse
+    public void clear() {
+        for (LongBuffer segment : segments) {
+            for (int i = 0, n = segment.capacity(); i < n; i++) {
+                segment.put(i, 0);
+            }
+        }
+        size = 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long getMemoryBytes() {
+        return capacity * Long.BYTES;
+    }
+
+    // Free the table, the set must not be used afterwards
+    public void close() {
+        release(buffers);
+        buffers = new ByteBuffer[0];
+        segments = new LongBuffer[0];
+    }
+
+    private static void release(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            DirectBuffers.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+// Player names as the score log and the save slots keep them: cut to a budget of UTF-8 bytes on a
+// character boundary, so the name reads back as exactly the string that was cut
+public final class PlayerNames {
+    private PlayerNames() {
+    }
+
+    // The longest prefix of player that is at most maxBytes of UTF-8, player itself if it fits
+    public static String cut(String player, int maxBytes) {
+        if (player.length() <= maxBytes / 3) {
+            return player; // Three bytes per char at most, surrogate pairs take four for two chars
+        }
+        int bytes = 0;
+        for (int i = 0; i < player.length(); ) {
+            int codePoint = player.codePointAt(i);
+            int size = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (bytes + size > maxBytes) {
+                return player.substring(0, i);
+            }
+            bytes += size;
+            i += Character.charCount(codePoint);
+        }
+        return player;
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.*;
+
+// Compact record of one game: the RNG seed it started from plus every effective move, 2 bits each
+// Re-running the moves from the seed through Game2048 reproduces the game exactly
+// File layout: int magic, int version, long seed, int size, int move count, int final score,
+// UTF player name, then the moves packed four to a byte (first move in the low bits)
+public class Replay {
+    private static final int MAGIC = 0x52504C59; // "RPLY"
+    private static final int VERSION = 1;
+
+    private final long seed;
+    private final int size;
+    private String player = "";
+    private int finalScore;
+    private byte[] moves = new byte[64];
+    private int moveCount;
+
+    public Replay(long seed, int size) {
+        this.seed = seed;
+        this.size = size;
+    }
+
+    public void addMove(int direction) {
+        if (moveCount >> 2 == moves.length) {
+            moves = java.util.Arrays.copyOf(moves, moves.length * 2);
+        }
+        moves[moveCount >> 2] |= (byte) (direction << ((moveCount & 3) << 1));
+        moveCount++;
+    }
+
+    // Forget every move after the first moveCount, used when a move is undone
+    public void truncate(int moveCount) {
+        if (moveCount >= this.moveCount) {
+            return;
+        }
+        java.util.Arrays.fill(moves, (moveCount + 3) >> 2, (this.moveCount + 3) >> 2, (byte) 0);
+        if ((moveCount & 3) != 0) {
+            moves[moveCount >> 2] &= (byte) ((1 << ((moveCount & 3) << 1)) - 1); // Keep the low moves of a shared byte
+        }
+        this.moveCount = moveCount;
+    }
+
+    public int moveAt(int index) {
+        return (moves[index >> 2] >> ((index & 3) << 1)) & 3;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getPlayer() {
+        return player;
+    }
+
+    public void setPlayer(String player) {
+        this.player = player == null ? "" : player;
+    }
+
+    public int getFinalScore() {
+        return finalScore;
+    }
+
+    public void setFinalScore(int finalScore) {
+        this.finalScore = finalScore;
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeInt(size);
+            out.writeInt(moveCount);
+            out.writeInt(finalScore);
+            out.writeUTF(player);
+            out.write(moves, 0, (moveCount + 3) >> 2);
+        }
+    }
+
+    public static Replay load(File file) throws IOException {
+        // Unbuffered, so the channel position says how much of the file the header took; the header is
+        // a handful of reads and the moves come in one readFully
+        try (FileInputStream stream = new FileInputStream(file); DataInputStream in = new DataInputStream(stream)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a replay file: " + file);
+            }
+            Replay replay = new Replay(in.readLong(), in.readInt());
+            int count = in.readInt();
+            replay.finalScore = in.readInt();
+            replay.player = in.readUTF();
+            long left = stream.getChannel().size() - stream.getChannel().position();
+            if (count < 0 || (count + 3L) >> 2 > left) { // Checked before allocating, a bad count could ask for GiB
+                throw new IOException("Bad move count " + count + " in " + file);
+            }
+            replay.moves = new byte[Math.max(1, (count + 3) >> 2)];
+            in.readFully(replay.moves, 0, (count + 3) >> 2);
+            replay.moveCount = count;
+            return replay;
+        }
+    }
+}
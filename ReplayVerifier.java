@@ -0,0 +1,89 @@
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Re-plays recorded games headless through the real move methods and checks that each ends in game
+// over with its recorded final score
+// Usage: java Game2048 --verify [--threads T] FILE_OR_DIRECTORY...
+public class ReplayVerifier {
+    // Re-run a replay, returns null if it checks out, otherwise what went wrong
+    public static String verify(Replay replay) {
+        if (replay.getSize() < Game2048.MIN_SIZE || replay.getSize() > Game2048.MAX_SIZE) {
+            return "unsupported board size " + replay.getSize();
+        }
+        Game2048 game = new Game2048(new GameRandom(), replay.getSize());
+        game.resetGame(replay.getSeed());
+        for (int i = 0; i < replay.getMoveCount(); i++) {
+            if (game.isGameOver()) {
+                return "game over before move " + i;
+            }
+            if (!game.move(replay.moveAt(i))) {
+                return "move " + i + " does not change the board"; // Recordings only hold effective moves
+            }
+        }
+        if (!game.isGameOver()) {
+            return "game not over after " + replay.getMoveCount() + " moves"; // Only finished games are saved
+        }
+        if (game.getScore() != replay.getFinalScore()) {
+            return "final score " + game.getScore() + ", recorded " + replay.getFinalScore();
+        }
+        return null;
+    }
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--verify")) {
+                continue;
+            } else if (args[i].equals("--threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                collect(new File(args[i]), files);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: --verify [--threads T] FILE_OR_DIRECTORY...");
+            return;
+        }
+
+        AtomicInteger failed = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        long start = System.nanoTime();
+        long moves = pool.submit(() -> files.parallelStream().mapToLong(file -> {
+            try {
+                Replay replay = Replay.load(file);
+                String problem = verify(replay);
+                if (problem != null) {
+                    failed.incrementAndGet();
+                    System.out.println("FAILED " + file + ": " + problem);
+                }
+                return replay.getMoveCount();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.out.println("FAILED " + file + ": " + e);
+                return 0;
+            }
+        }).sum()).join();
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.printf("Verified %d replays (%d failed) in %.3f s: %.0f replays/sec, %.0f moves/sec, %.1f us per replay%n",
+                files.size(), failed.get(), elapsed / 1e9, files.size() * 1e9 / elapsed, moves * 1e9 / elapsed,
+                elapsed / 1e3 / files.size());
+    }
+
+    private static void collect(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collect(child, files);
+                }
+            }
+        } else if (file.getName().endsWith(".replay")) {
+            files.add(file);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+// Checkpoint of the game in progress, kept in a small memory-mapped file so it survives a restart
+// The file has a header page and two slots, each on its own pages. Checkpoints are written in place
+// into the scratch slot; a background thread flushes it to disk a few times a second and only then
+// makes it the durable slot, so the other slot always holds a complete, synced checkpoint.
+// A power cut can tear at most the scratch slot, which then fails its CRC and is ignored on load.
+// Slot layout: int CRC32 of the rest of the slot, long sequence, int active, int score, long RNG state,
+// int move count, int free count, short name length, MAX_NAME_BYTES of UTF-8 name, one exponent byte per
+// cell, then the empty cell list as one char per cell
+public class SaveSlots implements Closeable {
+    private static final int MAGIC = 0x32534156; // "2SAV"
+    private static final int VERSION = 1;
+    private static final int PAGE = 4096;
+    private static final int MAX_NAME_BYTES = 128;
+    private static final long SYNC_MILLIS = 200; // Longest a checkpoint stays only in memory
+
+    // Field offsets within a slot
+    private static final int CRC = 0;
+    private static final int SEQUENCE = 4;
+    private static final int ACTIVE = 12;
+    private static final int SCORE = 16;
+    private static final int RNG = 20;
+    private static final int MOVES = 28;
+    private static final int FREE_COUNT = 32;
+    private static final int NAME_LENGTH = 36;
+    private static final int NAME = 38;
+    private static final int CELLS = NAME + MAX_NAME_BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int cells;
+    private final int slotBytes;
+    private final int stride; // Slot size rounded up to whole pages
+    private final ByteBuffer[] slots = new ByteBuffer[2]; // Views of each slot, absolute access only
+    private final ByteBuffer[] checked = new ByteBuffer[2]; // The part of each slot the CRC covers
+    private final CRC32 crc = new CRC32();
+    private final Thread syncer;
+    private int durable; // Guarded by this: slot holding the latest synced checkpoint
+    private boolean durableValid; // Guarded by this: false until a valid checkpoint exists
+    private boolean dirty; // Guarded by this: the scratch slot has a checkpoint not yet on disk
+    private long sequence; // Guarded by this: number of the next checkpoint
+    private String encodedPlayer; // Last player name written and its UTF-8 bytes, encoded once
+    private byte[] encodedName = new byte[0];
+    private volatile boolean closed;
+
+    private SaveSlots(FileChannel channel, MappedByteBuffer map, int size) {
+        this.channel = channel;
+        this.map = map;
+        this.cells = size * size;
+        this.slotBytes = CELLS + 3 * cells;
+        this.stride = (slotBytes + PAGE - 1) / PAGE * PAGE;
+        for (int i = 0; i < 2; i++) {
+            slots[i] = map.slice(PAGE + i * stride, stride);
+            checked[i] = map.slice(PAGE + i * stride + SEQUENCE, slotBytes - SEQUENCE);
+        }
+        syncer = new Thread(this::syncLoop, "save-sync");
+        syncer.setDaemon(true);
+    }
+
+    // Open (or create) the save file for a board size and pick its newest valid checkpoint
+    public static SaveSlots open(String path, int size) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int cells = size * size;
+        int stride = (CELLS + 3 * cells + PAGE - 1) / PAGE * PAGE;
+        long fileBytes = PAGE + 2L * stride;
+        boolean fresh = channel.size() != fileBytes;
+        if (fresh) {
+            channel.truncate(0); // Start from zeros, which never pass the CRC check
+        }
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+        if (fresh || map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != size) {
+            for (int i = 0; i < fileBytes; i++) {
+                map.put(i, (byte) 0);
+            }
+            map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, size);
+            map.force();
+        }
+        SaveSlots saves = new SaveSlots(channel, map, size);
+        saves.load();
+        saves.syncer.start();
+        return saves;
+    }
+
+    private synchronized void load() {
+        long newest = 0;
+        for (int i = 0; i < 2; i++) {
+            long slotSequence = slots[i].getLong(SEQUENCE);
+            if (slotSequence > newest && slots[i].getInt(CRC) == checksum(i)) {
+                newest = slotSequence;
+                durable = i;
+                durableValid = true;
+            }
+        }
+        sequence = newest + 1;
+    }
+
+    private int checksum(int slot) {
+        ByteBuffer view = checked[slot];
+        view.clear();
+        crc.reset();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    // True if the file holds a game that was still being played
+    public synchronized boolean hasGame() {
+        return durableValid && slots[durable].getInt(ACTIVE) != 0;
+    }
+
+    public synchronized int getScore() {
+        return slots[durable].getInt(SCORE);
+    }
+
+    public synchronized long getRngState() {
+        return slots[durable].getLong(RNG);
+    }
+
+    public synchronized int getMoveCount() {
+        return slots[durable].getInt(MOVES);
+    }
+
+    public synchronized String getPlayer() {
+        ByteBuffer slot = slots[durable];
+        byte[] name = new byte[Math.min(MAX_NAME_BYTES, slot.getShort(NAME_LENGTH))];
+        slot.get(NAME, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    // Copy the saved tiles into grid and the empty cell list into freeCells, returns the number of empty cells
+    public synchronized int restore(int[][] grid, int[] freeCells) {
+        ByteBuffer slot = slots[durable];
+        int size = grid.length;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int exponent = slot.get(CELLS + i * size + j);
+                grid[i][j] = exponent == 0 ? 0 : 1 << exponent;
+            }
+        }
+        int freeCount = slot.getInt(FREE_COUNT);
+        for (int k = 0; k < freeCount; k++) {
+            freeCells[k] = slot.getChar(CELLS + cells + 2 * k);
+        }
+        return freeCount;
+    }
+
+    // The name as a checkpoint keeps it: cut to MAX_NAME_BYTES of UTF-8 on a character boundary
+    static String storedName(String player) {
+        return PlayerNames.cut(player, MAX_NAME_BYTES);
+    }
+
+    // Write a checkpoint of the game in progress; only memory is touched, the sync thread does the disk
+    public synchronized void save(int[][] grid, int[] freeCells, int freeCount, int score, long rngState, int moveCount, String player) {
+        ByteBuffer slot = slots[1 - durable];
+        if (player != null && !player.equals(encodedPlayer)) {
+            encodedPlayer = player;
+            encodedName = storedName(player).getBytes(StandardCharsets.UTF_8);
+        }
+        slot.putLong(SEQUENCE, sequence++);
+        slot.putInt(ACTIVE, 1);
+        slot.putInt(SCORE, score);
+        slot.putLong(RNG, rngState);
+        slot.putInt(MOVES, moveCount);
+        slot.putInt(FREE_COUNT, freeCount);
+        slot.putShort(NAME_LENGTH, (short) encodedName.length);
+        slot.put(NAME, encodedName);
+        int size = grid.length;
+        for (int i = 0; i < size; i++) {
+            int[] row = grid[i];
+            for (int j = 0; j < size; j++) {
+                slot.put(CELLS + i * size + j, (byte) BitBoard.exponentOf(row[j]));
+            }
+        }
+        for (int k = 0; k < freeCount; k++) {
+            slot.putChar(CELLS + cells + 2 * k, (char) freeCells[k]);
+        }
+        slot.putInt(CRC, checksum(1 - durable));
+        dirty = true;
+    }
+
+    // Record that no game is in progress (the last one ended), so the next launch shows the menu
+    public synchronized void clear() {
+        ByteBuffer slot = slots[1 - durable];
+        slot.putLong(SEQUENCE, sequence++);
+        slot.putInt(ACTIVE, 0);
+        slot.putInt(CRC, checksum(1 - durable));
+        dirty = true;
+    }
+
+    // Push the scratch slot to disk and make it the durable one; the old durable slot becomes scratch
+    private synchronized void sync() {
+        if (!dirty) {
+            return;
+        }
+        int scratch = 1 - durable;
+        map.force(PAGE + scratch * stride, stride);
+        durable = scratch;
+        durableValid = true;
+        dirty = false;
+    }
+
+    private void syncLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(SYNC_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            sync();
+        }
+    }
+
+    public void close() throws IOException {
+        closed = true;
+        syncer.interrupt();
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        channel.close();
+    }
+}
@@ -0,0 +1,349 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+// Persistent high scores: an append-only binary log plus an in-memory index of each player's best
+// Record layout: int payload length, int CRC32 of the payload, then the payload
+// (long time millis, int score, short name length, UTF-8 name). Names are cut to MAX_NAME_BYTES on the
+// way in, so the index and every record agree on them. A torn or corrupt tail left by a
+// crash fails its CRC and is cut off on the next open. Writes are queued and appended in batches
+// by a background thread; the log is rewritten with one record per player once it holds mostly
+// superseded entries. One process at a time owns a log: it holds a lock on a .lock file beside it
+// until close(), since two writers would each compact the log out from under the other.
+public class ScoreStore implements Closeable {
+    private static final int MAGIC = 0x32303438; // "2048"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_NAME_BYTES = 1024;
+    private static final int MAX_BATCH = 4096;
+    private static final int COMPACT_MIN_RECORDS = 1024;
+
+    // One queued score
+    private static class Entry {
+        final String player;
+        final int score;
+        final long time;
+
+        Entry(String player, int score, long time) {
+            this.player = player;
+            this.score = score;
+            this.time = time;
+        }
+    }
+
+    private static final Entry CLOSE = new Entry("", 0, 0); // Tells the writer thread to stop
+
+    private final Path path;
+    private final ConcurrentHashMap<String, Integer> bestScores = new ConcurrentHashMap<>();
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel channel; // Writer thread only once open() returns
+    private FileChannel lockChannel; // Holds lock for as long as the store is open
+    private FileLock lock;
+    private int recordCount; // Records in the log, including superseded ones
+    private String topPlayer;
+    private int topScore;
+    private long submitted; // Guarded by this: entries queued
+    private long written; // Guarded by this: entries on disk
+    private volatile IOException writeError;
+    private boolean compactionFailed; // Writer thread only: the log could not be swapped, stop trying
+
+    private ScoreStore(Path path) {
+        this.path = path;
+        this.writer = new Thread(this::writeLoop, "score-writer");
+        this.writer.setDaemon(true);
+    }
+
+    // Open (or create) the log at path, loading its index through a memory-mapped read
+    public static ScoreStore open(String path) throws IOException {
+        ScoreStore store = new ScoreStore(Paths.get(path));
+        store.acquireLock();
+        try {
+            store.load();
+        } catch (IOException e) {
+            if (store.channel != null) {
+                store.channel.close();
+            }
+            store.releaseLock();
+            throw e;
+        }
+        store.writer.start();
+        return store;
+    }
+
+    private void acquireLock() throws IOException {
+        Path lockPath = path.resolveSibling(path.getFileName() + ".lock");
+        lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // Held by another store in this process
+        }
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("Score log is already open in another store or process: " + path);
+        }
+    }
+
+    private void releaseLock() throws IOException {
+        if (lockChannel.isOpen()) {
+            lockChannel.close(); // Releases the lock
+        }
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+            channel.position(HEADER_BYTES);
+            return;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Score log too large: " + path);
+        }
+
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long validEnd = HEADER_BYTES;
+        try {
+            if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+                throw new IOException("Not a score log: " + path);
+            }
+            CRC32 crc = new CRC32();
+            while (map.remaining() >= RECORD_HEADER_BYTES) {
+                int length = map.getInt();
+                int checksum = map.getInt();
+                if (length < 14 || length > 14 + MAX_NAME_BYTES || map.remaining() < length) {
+                    break; // Torn write at the end of the log
+                }
+                ByteBuffer payload = map.slice();
+                payload.limit(length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                payload.getLong(); // Time, not needed for the index
+                int score = payload.getInt();
+                int nameLength = payload.getShort();
+                byte[] name = new byte[nameLength];
+                payload.get(name);
+                index(new String(name, StandardCharsets.UTF_8), score);
+                recordCount++;
+                map.position(map.position() + length);
+                validEnd = map.position();
+            }
+        } finally {
+            DirectBuffers.release(map); // An open mapping would stop compaction renaming over the log
+        }
+        if (validEnd < size) {
+            System.err.println("Score log: dropping " + (size - validEnd) + " bytes of damaged records");
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+        channel.position(validEnd);
+    }
+
+    // Import the old name:score:player text file, used once when the log is still empty
+    public void importLegacyText(String path) {
+        if (recordCount > 0 || submitted > 0) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(":");
+                if (parts.length == 3) {
+                    record(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // No legacy file, or not in the expected format
+        }
+    }
+
+    private synchronized void index(String player, int score) {
+        bestScores.merge(player, score, Math::max);
+        if (topPlayer == null || score > topScore) {
+            topPlayer = player;
+            topScore = score;
+        }
+    }
+
+    // Queue a score; the in-memory index is updated at once, the disk write happens in the background
+    public void record(String player, int score) {
+        String name = storedName(player);
+        index(name, score);
+        synchronized (this) {
+            submitted++;
+        }
+        queue.add(new Entry(name, score, System.currentTimeMillis()));
+    }
+
+    // The name as it is stored: cut to at most MAX_NAME_BYTES of UTF-8, on a character boundary so it
+    // reads back as the same string
+    static String storedName(String player) {
+        return PlayerNames.cut(player, MAX_NAME_BYTES);
+    }
+
+    // Best score of every player, a live read-only view
+    public Map<String, Integer> bestScores() {
+        return Collections.unmodifiableMap(bestScores);
+    }
+
+    public Integer bestScore(String player) {
+        return bestScores.get(storedName(player));
+    }
+
+    public synchronized String getTopPlayer() {
+        return topPlayer;
+    }
+
+    public synchronized int getTopScore() {
+        return topScore;
+    }
+
+    // Wait until every score recorded so far is on disk
+    public synchronized void flush() throws IOException {
+        long target = submitted;
+        while (written < target && writeError == null && writer.isAlive()) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    public void close() throws IOException {
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        releaseLock();
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        CRC32 crc = new CRC32();
+        boolean closing = false;
+        try {
+            while (!closing) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH);
+                if (batch.remove(CLOSE)) {
+                    closing = true;
+                }
+                for (Entry entry : batch) {
+                    byte[] name = entry.player.getBytes(StandardCharsets.UTF_8); // Already cut by record
+                    int length = 14 + name.length;
+                    if (buffer.remaining() < RECORD_HEADER_BYTES + length) {
+                        writeFully(buffer);
+                    }
+                    int start = buffer.position();
+                    buffer.putInt(length).putInt(0);
+                    buffer.putLong(entry.time).putInt(entry.score).putShort((short) name.length).put(name);
+                    crc.reset();
+                    crc.update(buffer.array(), start + RECORD_HEADER_BYTES, length);
+                    buffer.putInt(start + 4, (int) crc.getValue());
+                }
+                writeFully(buffer);
+                channel.force(false); // One sync per batch, not per score
+                recordCount += batch.size();
+                if (!compactionFailed && recordCount > COMPACT_MIN_RECORDS && recordCount > 2 * bestScores.size()) {
+                    compact();
+                }
+                synchronized (this) {
+                    written += batch.size();
+                    notifyAll();
+                }
+                batch.clear();
+            }
+            channel.close();
+        } catch (IOException e) {
+            writeError = e;
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Rewrite the log with one record per player, then swap it in with an atomic rename
+    private void compact() throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".compact");
+        CRC32 crc = new CRC32();
+        long now = System.currentTimeMillis();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            buffer.putInt(MAGIC).putInt(VERSION);
+            for (Map.Entry<String, Integer> entry : bestScores.entrySet()) {
+                byte[] name = storedName(entry.getKey()).getBytes(StandardCharsets.UTF_8);
+                int length = 14 + name.length;
+                if (buffer.remaining() < RECORD_HEADER_BYTES + length) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                int start = buffer.position();
+                buffer.putInt(length).putInt(0);
+                buffer.putLong(now).putInt(entry.getValue()).putShort((short) name.length).put(name);
+                crc.reset();
+                crc.update(buffer.array(), start + RECORD_HEADER_BYTES, length);
+                buffer.putInt(start + 4, (int) crc.getValue());
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            recordCount = bestScores.size();
+        } catch (IOException e) {
+            // The full log is still intact, keep appending to it rather than losing every later score
+            compactionFailed = true;
+            Files.deleteIfExists(temp);
+            System.err.println("Score log: cannot compact " + path + ", keeping the full log: " + e);
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+}
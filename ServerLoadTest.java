@@ -0,0 +1,125 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Load generator for GameServer: many clients playing random moves, each waiting for every reply
+// Reports moves/sec and the round-trip latency distribution of the moves
+// Usage: java Game2048 --load-test [--host H] [--port P] [--clients C] [--seconds S]
+public class ServerLoadTest {
+    private static final int MAX_MICROS = 100_000; // Latencies above 100 ms share the last bucket
+
+    // One client's measurements
+    private static class ClientResult {
+        final long[] micros = new long[MAX_MICROS + 1]; // Histogram of move round trips, 1 us buckets
+        long moves;
+        long games;
+    }
+
+    public static void main(String[] args) {
+        String host = "127.0.0.1";
+        int port = GameServer.DEFAULT_PORT;
+        int clients = 64;
+        int seconds = 10;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--load-test": break;
+                case "--host": host = args[++i]; break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--clients": clients = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: --load-test [--host H] [--port P] [--clients C] [--seconds S]");
+                    return;
+            }
+        }
+
+        try {
+            run(host, port, clients, seconds);
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void run(String host, int port, int clients, int seconds) throws InterruptedException, ExecutionException {
+        System.out.println("Load test: " + clients + " clients against " + host + ":" + port + " for " + seconds + " s");
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<ClientResult>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            String name = "load" + c;
+            futures.add(pool.submit(() -> runClient(host, port, name, deadline)));
+        }
+        ClientResult total = new ClientResult();
+        for (Future<ClientResult> future : futures) {
+            ClientResult result = future.get();
+            total.moves += result.moves;
+            total.games += result.games;
+            for (int i = 0; i <= MAX_MICROS; i++) {
+                total.micros[i] += result.micros[i];
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.printf("Moves: %d in %.1f s, %.0f moves/sec, %d games%n", total.moves, elapsed / 1e9, total.moves * 1e9 / elapsed, total.games);
+        System.out.printf("Round trip us: p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+                percentile(total, 50), percentile(total, 90), percentile(total, 99), percentile(total, 99.9), percentile(total, 100));
+    }
+
+    private static ClientResult runClient(String host, int port, String name, long deadline) throws IOException {
+        ClientResult result = new ClientResult();
+        SplittableRandom random = new SplittableRandom();
+        byte[] moves = "UDLR".getBytes(StandardCharsets.US_ASCII);
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out.write(("N " + name + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            in.readLine();
+            result.games++;
+            while (System.nanoTime() < deadline) {
+                long sent = System.nanoTime();
+                out.write(moves[random.nextInt(4)]);
+                out.write('\n');
+                out.flush();
+                String reply = in.readLine();
+                long micros = (System.nanoTime() - sent) / 1000;
+                if (reply == null) {
+                    break;
+                }
+                result.micros[(int) Math.min(MAX_MICROS, micros)]++;
+                result.moves++;
+                if (reply.endsWith(" 1")) {
+                    out.write(("N " + name + "\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    in.readLine();
+                    result.games++;
+                }
+            }
+            out.write("Q\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+        return result;
+    }
+
+    private static long percentile(ClientResult total, double percent) {
+        long count = 0;
+        for (long n : total.micros) {
+            count += n;
+        }
+        long target = (long) Math.ceil(percent / 100 * count);
+        long seen = 0;
+        for (int i = 0; i <= MAX_MICROS; i++) {
+            seen += total.micros[i];
+            if (seen >= Math.max(1, target)) {
+                return i;
+            }
+        }
+        return MAX_MICROS;
+    }
+}
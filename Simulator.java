@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Headless batch runner: plays many games in parallel and prints throughput and distributions
+// Usage: java Game2048 --simulate [--games N] [--threads T] [--policy random|cycle|greedy|expectimax|montecarlo|ntuple] [--budget MS] [--seed S] [--size N] [--weights FILE] [--telemetry FILE]
+// With --weights, expectimax scores its leaves with the trained network instead of the row heuristic
+// With --telemetry every move is exported (see TelemetryWriter), waiting for the writer rather than dropping moves
+public class Simulator {
+    private static final int MAX_EXPONENT = 31; // Every power of two an int holds
+
+    // Everything one worker measured, merged after all workers finish
+    private static class WorkerResult {
+        int[] scores;
+        long moves;
+        long[] maxTileCounts = new long[MAX_EXPONENT];
+        MovePolicy policy;
+    }
+
+    public static void main(String[] args) {
+        int games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String policyName = "random";
+        long seed = System.nanoTime();
+        long budgetMillis = 10; // Per-move time budget for search policies
+        int size = 4;
+        String weightsPath = null;
+        String telemetryPath = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--simulate": break;
+                case "--games": games = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--policy": policyName = args[++i]; break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--budget": budgetMillis = Long.parseLong(args[++i]); break;
+                case "--size": size = Integer.parseInt(args[++i]); break;
+                case "--weights": weightsPath = args[++i]; break;
+                case "--telemetry": telemetryPath = args[++i]; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: --simulate [--games N] [--threads T] [--policy random|cycle|greedy|expectimax|montecarlo|ntuple] [--budget MS] [--seed S] [--size N] [--weights FILE] [--telemetry FILE]");
+                    return;
+            }
+        }
+        if (games < 1) {
+            System.err.println("--games must be at least 1: " + games);
+            return;
+        }
+        NTupleNetwork network = null;
+        if (weightsPath != null) {
+            try {
+                network = NTupleNetwork.load(Paths.get(weightsPath)); // Mapped read-only, shared by every worker
+            } catch (IOException e) {
+                System.err.println("Cannot load weights: " + e.getMessage());
+                return;
+            }
+        } else if (policyName.equals("ntuple")) {
+            System.err.println("Policy 'ntuple' needs --weights FILE, see --train");
+            return;
+        }
+        try {
+            createPolicy(policyName, budgetMillis, network); // Fail fast on an unknown policy name
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: --simulate [--games N] [--threads T] [--policy random|cycle|greedy|expectimax|montecarlo|ntuple] [--budget MS] [--seed S] [--size N] [--weights FILE] [--telemetry FILE]");
+            return;
+        }
+        if (size != 4 && (policyName.equals("greedy") || policyName.equals("expectimax") || policyName.equals("ntuple"))) {
+            System.err.println("Policy '" + policyName + "' works on bitboards and only supports --size 4");
+            return;
+        }
+
+        TelemetryWriter telemetry = null;
+        if (telemetryPath != null) {
+            try {
+                telemetry = TelemetryWriter.open(Paths.get(telemetryPath), true);
+            } catch (IOException e) {
+                System.err.println("Cannot open telemetry file: " + e.getMessage());
+                return;
+            }
+        }
+
+        threads = Math.max(1, Math.min(threads, games));
+        System.out.println("Simulating " + games + " " + size + "x" + size + " games with policy '" + policyName + "' on " + threads + " threads (seed " + seed + ")");
+
+        // Each worker gets its own Random stream split from the master seed, so nothing is shared
+        SplittableRandom seeds = new SplittableRandom(seed);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<ForkJoinTask<WorkerResult>> tasks = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int w = 0; w < threads; w++) {
+            int workerGames = games / threads + (w < games % threads ? 1 : 0);
+            long workerSeed = seeds.nextLong();
+            String name = policyName;
+            long budget = budgetMillis;
+            int boardSize = size;
+            NTupleNetwork weights = network;
+            TelemetryWriter.Recorder recorder = telemetry == null ? null : telemetry.newRecorder();
+            tasks.add(pool.submit(() -> runWorker(workerGames, boardSize, new GameRandom(workerSeed), createPolicy(name, budget, weights), recorder)));
+        }
+
+        WorkerResult total = new WorkerResult();
+        total.scores = new int[games];
+        int filled = 0;
+        long searchNodes = 0;
+        long searchNanos = 0;
+        long rollouts = 0;
+        long rolloutNanos = 0;
+        for (ForkJoinTask<WorkerResult> task : tasks) {
+            WorkerResult result = task.join();
+            if (result.policy instanceof ExpectimaxSolver) {
+                searchNodes += ((ExpectimaxSolver) result.policy).getTotalNodes();
+                searchNanos += ((ExpectimaxSolver) result.policy).getTotalNanos();
+            }
+            if (result.policy instanceof MonteCarloAdvisor) {
+                rollouts += ((MonteCarloAdvisor) result.policy).getTotalRollouts();
+                rolloutNanos += ((MonteCarloAdvisor) result.policy).getTotalNanos();
+            }
+            System.arraycopy(result.scores, 0, total.scores, filled, result.scores.length);
+            filled += result.scores.length;
+            total.moves += result.moves;
+            for (int e = 0; e < MAX_EXPONENT; e++) {
+                total.maxTileCounts[e] += result.maxTileCounts[e];
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        if (telemetry != null) {
+            try {
+                telemetry.close();
+                System.out.printf("Telemetry: %,d moves in %,d bytes (%.1f bytes/move, %.1fx smaller than raw), %,d dropped%n",
+                        telemetry.getWrittenMoves(), telemetry.getWrittenBytes(),
+                        (double) telemetry.getWrittenBytes() / Math.max(1, telemetry.getWrittenMoves()),
+                        (double) telemetry.getRawBytes() / Math.max(1, telemetry.getWrittenBytes()), telemetry.getDroppedMoves());
+            } catch (IOException e) {
+                System.err.println("Telemetry incomplete: " + e.getMessage());
+            }
+        }
+
+        printReport(total, elapsed);
+        if (searchNanos > 0) {
+            System.out.printf("Search: %d nodes, %.0f nodes/sec per thread%n", searchNodes, searchNodes * 1e9 / searchNanos);
+        }
+        if (rolloutNanos > 0) {
+            System.out.printf("Rollouts: %d, %.0f rollouts/sec per thread%n", rollouts, rollouts * 1e9 / rolloutNanos);
+        }
+    }
+
+    // Build the named policy, one instance per worker so policies may keep private state
+    static MovePolicy createPolicy(String name, long budgetMillis, NTupleNetwork network) {
+        switch (name) {
+            case "random":
+                return (grid, random) -> random.nextInt(4);
+            case "cycle":
+                return new MovePolicy() {
+                    private int next;
+
+                    public int chooseMove(int[][] grid, Random random) {
+                        next = (next + 1) & 3;
+                        return next;
+                    }
+                };
+            case "greedy":
+                return (grid, random) -> {
+                    int best = random.nextInt(4);
+                    if (!BitBoard.fits(grid)) {
+                        return best; // Past BitBoard.MAX_TILE
+                    }
+                    long board = BitBoard.fromGrid(grid);
+                    int bestScore = -1;
+                    for (int direction = 0; direction < 4; direction++) {
+                        if (BitBoard.move(board, direction) != board) {
+                            int points = BitBoard.moveScore(board, direction);
+                            if (points > bestScore) {
+                                bestScore = points;
+                                best = direction;
+                            }
+                        }
+                    }
+                    return best;
+                };
+            case "expectimax":
+                // Workers already use every core, so the root moves are searched on the worker thread
+                return new ExpectimaxSolver(budgetMillis, 8, 18, false, network);
+            case "montecarlo":
+                // Same here, the rollouts of a move all run on the worker thread
+                return new MonteCarloAdvisor(budgetMillis, false);
+            case "ntuple":
+                return network; // Read-only, so one instance serves every worker
+            default:
+                throw new IllegalArgumentException("Unknown policy: " + name);
+        }
+    }
+
+    // Play a batch of full games on one thread through the regular game methods
+    private static WorkerResult runWorker(int games, int size, GameRandom random, MovePolicy policy, TelemetryWriter.Recorder telemetry) {
+        WorkerResult result = new WorkerResult();
+        result.scores = new int[games];
+        result.policy = policy;
+        Game2048 game = new Game2048(random, size);
+        game.setTelemetry(telemetry);
+        for (int g = 0; g < games; g++) {
+            game.resetGame();
+            while (!game.isGameOver()) {
+                int direction = policy.chooseMove(game.getGrid(), random);
+                // A move that changes nothing would loop forever, so fall through to the next direction
+                for (int k = 0; k < 4 && !game.move((direction + k) & 3); k++) {
+                }
+                result.moves++;
+            }
+            result.scores[g] = game.getScore();
+            result.maxTileCounts[BitBoard.exponentOf(game.getMaxTile())]++;
+        }
+        if (telemetry != null) {
+            telemetry.flush();
+        }
+        return result;
+    }
+
+    private static void printReport(WorkerResult total, long elapsedNanos) {
+        int games = total.scores.length;
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Elapsed: %.3f s%n", seconds);
+        System.out.printf("Games/sec: %.1f%n", games / seconds);
+        System.out.printf("Moves/sec: %.1f (%d moves, %.1f per game)%n", total.moves / seconds, total.moves, (double) total.moves / games);
+
+        int[] scores = total.scores.clone();
+        Arrays.sort(scores);
+        long sum = 0;
+        for (int s : scores) {
+            sum += s;
+        }
+        System.out.printf("Score: mean %.1f, min %d, p50 %d, p90 %d, p99 %d, max %d%n",
+                (double) sum / games, scores[0], percentile(scores, 50), percentile(scores, 90),
+                percentile(scores, 99), scores[games - 1]);
+
+        System.out.println("Max tile distribution:");
+        for (int e = 1; e < MAX_EXPONENT; e++) {
+            if (total.maxTileCounts[e] > 0) {
+                System.out.printf("  %6d: %8d (%5.2f%%)%n", 1 << e, total.maxTileCounts[e], 100.0 * total.maxTileCounts[e] / games);
+            }
+        }
+    }
+
+    private static int percentile(int[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,272 @@
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.*;
+
+// Lobby display: a wall of 4x4 boards, each played by a MovePolicy on the headless engine
+// Worker threads own a share of the games and publish every board as a packed BitBoard long. The wall
+// is one component; a Swing timer asks for one repaint per frame, and the paint draws the cells that
+// changed since the last frame into a cached back buffer with TileSprites, then copies the buffer to
+// the screen in a single drawImage. A frame costs in proportion to the moves made, not the boards shown.
+// Usage: java Game2048 --spectate [--boards N] [--policy NAME] [--budget MS] [--weights FILE]
+//        [--speed MOVES] [--threads T] [--fps F]
+public class SpectatorWall extends JComponent {
+    private static final int GAP = 4; // Pixels between boards
+    private static final int STATUS_HEIGHT = 24; // Strip at the top with the frame statistics
+    private static final long GAME_OVER_PAUSE_NANOS = TimeUnit.SECONDS.toNanos(2); // A lost board stays up this long
+    private static final long STATS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final int boardCount;
+    private final AtomicLongArray boards; // Published by the workers, read by the EDT
+    private final LongAdder moves = new LongAdder();
+    private final LatencyHistogram paintTimes = new LatencyHistogram("wallPaint");
+
+    // Paint state, EDT only
+    private final long[] drawn; // Board as it is in the back buffer
+    private final TileSprites sprites = new TileSprites();
+    private BufferedImage back;
+    private int columns;
+    private int boardPixels; // Side of a board including its gap
+    private int cellPixels;
+    private int originX;
+    private long frames;
+    private long lastReport = System.nanoTime();
+    private long movesAtLastReport;
+    private String status = "";
+
+    public SpectatorWall(int boardCount) {
+        this.boardCount = boardCount;
+        this.boards = new AtomicLongArray(boardCount);
+        this.drawn = new long[boardCount];
+        setOpaque(true);
+        setBackground(Color.DARK_GRAY);
+        setPreferredSize(new Dimension(1280, 800));
+    }
+
+    public static void main(String[] args) {
+        int boardCount = 200;
+        String policyName = "greedy";
+        long budgetMillis = 1;
+        String weightsPath = null;
+        double speed = 8; // Moves per second per board, 0 for as fast as the policy goes
+        int threads = Runtime.getRuntime().availableProcessors();
+        int fps = 60;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--spectate": break;
+                case "--boards": boardCount = Math.max(1, Integer.parseInt(args[++i])); break;
+                case "--policy": policyName = args[++i]; break;
+                case "--budget": budgetMillis = Long.parseLong(args[++i]); break;
+                case "--weights": weightsPath = args[++i]; break;
+                case "--speed": speed = Double.parseDouble(args[++i]); break;
+                case "--threads": threads = Math.max(1, Integer.parseInt(args[++i])); break;
+                case "--fps": fps = Math.max(1, Math.min(240, Integer.parseInt(args[++i]))); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: --spectate [--boards N] [--policy NAME] [--budget MS] [--weights FILE] [--speed MOVES] [--threads T] [--fps F]");
+                    return;
+            }
+        }
+        NTupleNetwork network = null;
+        if (weightsPath != null) {
+            try {
+                network = NTupleNetwork.load(Paths.get(weightsPath));
+            } catch (IOException e) {
+                System.err.println("Cannot load weights: " + e.getMessage());
+                return;
+            }
+        }
+        try {
+            if (Simulator.createPolicy(policyName, budgetMillis, network) == null) {
+                System.err.println("Policy 'ntuple' needs --weights FILE, see --train");
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: --spectate [--boards N] [--policy NAME] [--budget MS] [--weights FILE] [--speed MOVES] [--threads T] [--fps F]");
+            return;
+        }
+
+        SpectatorWall wall = new SpectatorWall(boardCount);
+        wall.startPlayers(Math.min(threads, boardCount), policyName, budgetMillis, network, speed);
+        int frameMillis = 1000 / fps;
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("2048 Spectator Wall");
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.add(wall);
+            frame.pack();
+            frame.setExtendedState(JFrame.MAXIMIZED_BOTH);
+            frame.addKeyListener(new KeyAdapter() {
+                public void keyPressed(KeyEvent e) {
+                    if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                        System.exit(0);
+                    }
+                }
+            });
+            frame.setVisible(true);
+            new Timer(frameMillis, e -> wall.repaint()).start(); // The one repaint of each frame
+        });
+    }
+
+    // Start the threads that play the games, each with its own policy instance and share of the boards
+    public void startPlayers(int threads, String policyName, long budgetMillis, NTupleNetwork network, double movesPerSecond) {
+        long sweepNanos = movesPerSecond <= 0 ? 0 : (long) (1e9 / movesPerSecond);
+        SplittableRandom seeds = new SplittableRandom();
+        for (int t = 0; t < threads; t++) {
+            int first = (int) ((long) boardCount * t / threads);
+            int end = (int) ((long) boardCount * (t + 1) / threads);
+            MovePolicy policy = Simulator.createPolicy(policyName, budgetMillis, network);
+            long seed = seeds.nextLong();
+            Thread player = new Thread(() -> play(first, end, policy, seed, sweepNanos), "wall-player-" + t);
+            player.setDaemon(true);
+            player.start();
+        }
+    }
+
+    // Make one move on every board in [first, end) per sweep, starting a new game a while after one ends
+    private void play(int first, int end, MovePolicy policy, long seed, long sweepNanos) {
+        GameRandom random = new GameRandom(seed);
+        Game2048[] games = new Game2048[end - first];
+        long[] overSince = new long[games.length]; // When the game ended, 0 while it is being played
+        for (int i = 0; i < games.length; i++) {
+            games[i] = new Game2048(new GameRandom(random.nextLong()), 4);
+            games[i].resetGame();
+            boards.set(first + i, BitBoard.fromGrid(games[i].getGrid()));
+        }
+        long nextSweep = System.nanoTime();
+        while (true) {
+            for (int i = 0; i < games.length; i++) {
+                Game2048 game = games[i];
+                if (overSince[i] != 0) {
+                    if (System.nanoTime() - overSince[i] < GAME_OVER_PAUSE_NANOS) {
+                        continue;
+                    }
+                    game.resetGame();
+                    overSince[i] = 0;
+                } else {
+                    int direction = policy.chooseMove(game.getGrid(), random);
+                    for (int k = 0; k < 4 && !game.move((direction + k) & 3); k++) {
+                    }
+                    moves.increment();
+                    if (game.isGameOver() || game.getMaxTile() >= BitBoard.MAX_TILE) { // The wall draws bitboards, which stop at 32768
+                        overSince[i] = System.nanoTime();
+                    }
+                }
+                boards.lazySet(first + i, BitBoard.fromGrid(game.getGrid()));
+            }
+            if (sweepNanos > 0) {
+                nextSweep += sweepNanos;
+                long sleep = nextSweep - System.nanoTime();
+                if (sleep > 0) {
+                    LockSupport.parkNanos(sleep);
+                } else {
+                    nextSweep = System.nanoTime(); // The policy is slower than the speed asked for
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        int width = getWidth();
+        int height = getHeight() - STATUS_HEIGHT;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (back == null || back.getWidth() != width || back.getHeight() != height) {
+            layoutBoards(width, height);
+        }
+        drawChangedCells();
+        g.drawImage(back, 0, STATUS_HEIGHT, null);
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, width, STATUS_HEIGHT);
+        g.setColor(Color.WHITE);
+        g.drawString(status, 8, STATUS_HEIGHT - 7);
+        long now = System.nanoTime();
+        paintTimes.record(now - start);
+        frames++;
+        if (now - lastReport >= STATS_INTERVAL_NANOS) {
+            report(now);
+        }
+    }
+
+    // Columns, rows and board size that fit the most boards of the largest size, and a fresh back buffer
+    private void layoutBoards(int width, int height) {
+        int bestColumns = 1;
+        int bestPixels = 0;
+        for (int c = 1; c <= boardCount; c++) {
+            int rows = (boardCount + c - 1) / c;
+            int pixels = Math.min(width / c, height / rows);
+            if (pixels > bestPixels) {
+                bestPixels = pixels;
+                bestColumns = c;
+            }
+        }
+        columns = bestColumns;
+        boardPixels = bestPixels;
+        cellPixels = Math.max(1, (boardPixels - GAP) / 4);
+        originX = (width - columns * boardPixels) / 2;
+        sprites.resize(cellPixels, cellPixels);
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        back = configuration != null
+                ? configuration.createCompatibleImage(width, height)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = back.createGraphics();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        Arrays.fill(drawn, -1L); // Not a reachable board, so every cell is drawn next
+    }
+
+    // Bring the back buffer up to date, one sprite per cell that changed
+    private void drawChangedCells() {
+        Graphics2D g = back.createGraphics();
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        for (int b = 0; b < boardCount; b++) {
+            long board = boards.get(b);
+            long changed = board ^ drawn[b];
+            if (changed == 0) {
+                continue;
+            }
+            drawn[b] = board;
+            int x0 = originX + (b % columns) * boardPixels + GAP / 2;
+            int y0 = (b / columns) * boardPixels + GAP / 2;
+            for (int cell = 0; cell < 16; cell++) {
+                if (((changed >>> (4 * cell)) & 0xF) != 0) {
+                    int exponent = (int) ((board >>> (4 * cell)) & 0xF);
+                    g.drawImage(sprites.sprite(exponent == 0 ? 0 : 1 << exponent, configuration),
+                            x0 + (cell & 3) * cellPixels, y0 + (cell >> 2) * cellPixels, null);
+                }
+            }
+        }
+        g.dispose();
+    }
+
+    // Refresh the status strip and print the frame rate and paint cost every few seconds
+    private void report(long now) {
+        double seconds = (now - lastReport) / 1e9;
+        long totalMoves = moves.sum();
+        status = String.format("%d boards, %,.0f moves/sec, %.1f fps, paint ms p50 %.2f p99 %.2f max %.2f",
+                boardCount, (totalMoves - movesAtLastReport) / seconds, frames / seconds,
+                paintTimes.percentileNanos(50) / 1e6, paintTimes.percentileNanos(99) / 1e6, paintTimes.getMaxNanos() / 1e6);
+        System.out.println("Wall: " + status);
+        paintTimes.reset();
+        frames = 0;
+        movesAtLastReport = totalMoves;
+        lastReport = now;
+    }
+
+    public LatencyHistogram getPaintTimes() {
+        return paintTimes;
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Breadth-first enumeration of every board reachable under the game's move and spawn rules,
+// for boards of size 2 to 4 (4 bits per cell, so a board is one long as in BitBoard)
+// States are explored in layers of equal tile sum: sliding keeps the sum and every spawn adds 2 or 4,
+// so layer S only feeds layers S + 2 and S + 4. Only those two layers need a duplicate check; they
+// live in off-heap hash sets, and the layer being expanded is streamed from a StateFrontier that
+// spills to disk when it outgrows its buffer. Boards are stored in one canonical form under the
+// 8 rotations and reflections of the square, which the rules do not tell apart.
+// Usage: java Game2048 --explore [--size N] [--max-sum S] [--memory MB] [--frontier-memory MB] [--spill-dir DIR]
+// With --size 4 a --max-sum bound is a depth bound: a game with tile sum S has made between
+// (S - 8) / 4 and (S - 4) / 2 moves.
+// --memory is a hard cap on each of the two sets (there is no spilling for them): once a layer needs
+// a bigger table the run stops with the layers finished so far reported. --frontier-memory is only
+// a buffer size, the frontier spills past it.
+public class StateExplorer {
+    private static final int REPORT_EVERY_SUM = 32; // Print one layer in this many sum steps
+
+    private final int size;
+    private final int cells;
+    private final int[][][] lines; // [direction][line][position] = cell, position 0 is where tiles slide to
+    private final int[][] symmetries; // [symmetry][cell] = cell it maps to
+    private final int[] line; // Scratch for slideLine
+
+    public StateExplorer(int size) {
+        if (size < 2 || size > 4) {
+            throw new IllegalArgumentException("Board size must be 2 to 4 to pack into a long: " + size);
+        }
+        this.size = size;
+        this.cells = size * size;
+        this.line = new int[size];
+        lines = new int[4][size][size];
+        for (int l = 0; l < size; l++) {
+            for (int p = 0; p < size; p++) {
+                lines[BitBoard.UP][l][p] = p * size + l;
+                lines[BitBoard.DOWN][l][p] = (size - 1 - p) * size + l;
+                lines[BitBoard.LEFT][l][p] = l * size + p;
+                lines[BitBoard.RIGHT][l][p] = l * size + size - 1 - p;
+            }
+        }
+        // Every combination of transpose, mirror left-right and mirror top-bottom
+        symmetries = new int[8][cells];
+        for (int s = 0; s < 8; s++) {
+            for (int r = 0; r < size; r++) {
+                for (int c = 0; c < size; c++) {
+                    int row = (s & 2) != 0 ? size - 1 - r : r;
+                    int col = (s & 1) != 0 ? size - 1 - c : c;
+                    symmetries[s][r * size + c] = (s & 4) != 0 ? col * size + row : row * size + col;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int size = 3;
+        int maxSum = Integer.MAX_VALUE;
+        long memoryMiB = 1024;
+        int frontierMiB = 64;
+        Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--explore": break;
+                case "--size": size = Integer.parseInt(args[++i]); break;
+                case "--max-sum": maxSum = Integer.parseInt(args[++i]); break;
+                case "--memory": memoryMiB = Long.parseLong(args[++i]); break;
+                case "--frontier-memory": frontierMiB = Integer.parseInt(args[++i]); break;
+                case "--spill-dir": spillDirectory = Paths.get(args[++i]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: --explore [--size N] [--max-sum S] [--memory MB] [--frontier-memory MB] [--spill-dir DIR]");
+                    return;
+            }
+        }
+        if (memoryMiB < 1 || frontierMiB < 1 || frontierMiB > 2047) {
+            System.err.println("--memory must be at least 1 MB and --frontier-memory 1 to 2047 MB");
+            return;
+        }
+        if (size == 4 && maxSum == Integer.MAX_VALUE) {
+            System.err.println("The 4x4 state space is far too big to finish, give a --max-sum bound");
+            return;
+        }
+        try {
+            new StateExplorer(size).explore(maxSum, memoryMiB << 20, frontierMiB << 20, spillDirectory);
+        } catch (IOException e) {
+            System.err.println("Exploration stopped: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            System.err.println("Exploration stopped: " + e.getMessage() + ", give more --memory or a lower --max-sum");
+        }
+    }
+
+    // Explore every layer up to tile sum maxSum, each of the two pending sets may use up to setBytes
+    // (IllegalStateException past that); all off-heap memory is freed before returning or throwing
+    public long explore(int maxSum, long setBytes, int frontierBytes, Path spillDirectory) throws IOException {
+        long start = System.nanoTime();
+        long gcBefore = gcCount();
+        OffHeapLongSet plusTwo = new OffHeapLongSet(1 << 16, setBytes); // Layer sum + 2
+        OffHeapLongSet plusFour = new OffHeapLongSet(1 << 16, setBytes); // Layer sum + 4
+        StateFrontier layer = new StateFrontier(frontierBytes, spillDirectory);
+        try {
+            // Starting boards: two tiles on an empty board, sums 4, 6 and 8
+            StateFrontier first = layer;
+            try (OffHeapLongSet sumFour = new OffHeapLongSet(1 << 10, setBytes)) {
+                for (int a = 0; a < cells; a++) {
+                    for (int b = a + 1; b < cells; b++) {
+                        for (int ea = 1; ea <= 2; ea++) {
+                            for (int eb = 1; eb <= 2; eb++) {
+                                long board = canonical((long) ea << (4 * a) | (long) eb << (4 * b));
+                                int sum = (1 << ea) + (1 << eb);
+                                (sum == 4 ? sumFour : sum == 6 ? plusTwo : plusFour).add(board);
+                            }
+                        }
+                    }
+                }
+                sumFour.forEach(board -> addUnchecked(first, board));
+            }
+            int sum = 4;
+            long total = 0;
+            long spilled = 0;
+            while (layer.size() > 0 && sum <= maxSum) {
+                total += layer.size();
+                if (sum % REPORT_EVERY_SUM == 0 || sum + 2 > maxSum) {
+                    System.out.printf("Sum %6d: %,15d states, %,15d in all, sets %d + %d MiB, %,d boards spilled%n",
+                            sum, layer.size(), total, plusTwo.getMemoryBytes() >> 20, plusFour.getMemoryBytes() >> 20, spilled);
+                }
+                if (sum + 2 <= maxSum) {
+                    OffHeapLongSet two = plusTwo;
+                    OffHeapLongSet four = plusFour;
+                    layer.forEach(board -> expand(board, two, four));
+                }
+                spilled += layer.getSpilledBoards();
+                layer.close();
+
+                // Layer sum + 2 has every parent now, it becomes the next frontier
+                StateFrontier next = new StateFrontier(frontierBytes, spillDirectory);
+                layer = next;
+                plusTwo.forEach(board -> addUnchecked(next, board));
+                plusTwo.clear();
+                OffHeapLongSet reused = plusTwo;
+                plusTwo = plusFour;
+                plusFour = reused;
+                sum += 2;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Explored %,d states of the %dx%d game in %.1f s (%,.0f states/sec), %d GCs, %,d boards spilled%n",
+                    total, size, size, seconds, total / seconds, gcCount() - gcBefore, spilled);
+            return total;
+        } finally {
+            layer.close();
+            plusTwo.close();
+            plusFour.close();
+        }
+    }
+
+    private static void addUnchecked(StateFrontier frontier, long board) {
+        try {
+            frontier.add(board);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Every board one move and one spawn away, sorted into the set for its tile sum
+    private void expand(long board, OffHeapLongSet plusTwo, OffHeapLongSet plusFour) {
+        for (int direction = 0; direction < 4; direction++) {
+            long moved = move(board, direction);
+            if (moved == board) {
+                continue;
+            }
+            for (int cell = 0; cell < cells; cell++) {
+                if (((moved >>> (4 * cell)) & 0xF) == 0) {
+                    plusTwo.add(canonical(moved | 1L << (4 * cell)));
+                    plusFour.add(canonical(moved | 2L << (4 * cell)));
+                }
+            }
+        }
+    }
+
+    // Slide without spawning, through the same line rule as Game2048 (BitBoard for 4x4), with BitBoard's
+    // limit: a line that would make a tile over BitBoard.MAX_TILE is left as it is
+    long move(long board, int direction) {
+        if (size == 4) {
+            return BitBoard.move(board, direction);
+        }
+        long result = board;
+        for (int[] cellsOfLine : lines[direction]) {
+            for (int p = 0; p < size; p++) {
+                int exponent = (int) ((board >>> (4 * cellsOfLine[p])) & 0xF);
+                line[p] = exponent == 0 ? 0 : 1 << exponent;
+            }
+            Game2048.slideLine(line);
+            if (tooBig(line)) {
+                continue;
+            }
+            for (int p = 0; p < size; p++) {
+                int shift = 4 * cellsOfLine[p];
+                result = (result & ~(0xFL << shift)) | (long) BitBoard.exponentOf(line[p]) << shift;
+            }
+        }
+        return result;
+    }
+
+    private static boolean tooBig(int[] line) {
+        for (int value : line) {
+            if (value > BitBoard.MAX_TILE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Smallest of the 8 symmetric images of the board
+    long canonical(long board) {
+        if (size == 4) {
+            return canonical4(board);
+        }
+        long best = Long.MAX_VALUE;
+        for (int[] symmetry : symmetries) {
+            long image = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                image |= ((board >>> (4 * cell)) & 0xF) << (4 * symmetry[cell]);
+            }
+            best = Math.min(best, image);
+        }
+        return best;
+    }
+
+    // Same as canonical for 4x4 boards with bit tricks: mirrors and transposes of the whole long
+    private static long canonical4(long board) {
+        long h = mirrorLeftRight(board);
+        long v = mirrorTopBottom(board);
+        long hv = mirrorTopBottom(h);
+        long best = Math.min(Math.min(board, h), Math.min(v, hv));
+        best = Math.min(best, Math.min(BitBoard.transpose(board), BitBoard.transpose(h)));
+        return Math.min(best, Math.min(BitBoard.transpose(v), BitBoard.transpose(hv)));
+    }
+
+    private static long mirrorLeftRight(long x) {
+        return (x & 0x000F000F000F000FL) << 12 | (x & 0x00F000F000F000F0L) << 4
+                | (x >>> 4) & 0x00F000F000F000F0L | (x >>> 12) & 0x000F000F000F000FL;
+    }
+
+    private static long mirrorTopBottom(long x) {
+        return x << 48 | (x << 16) & 0x0000FFFF00000000L | (x >>> 16) & 0x00000000FFFF0000L | x >>> 48;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+}
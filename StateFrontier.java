@@ -0,0 +1,92 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.function.LongConsumer;
+
+// Append-only list of packed boards kept in a direct buffer, spilled to a temporary file whenever
+// the buffer fills, then read back in order a buffer at a time; memory use stays fixed however
+// many boards it holds
+public class StateFrontier implements Closeable {
+    private final ByteBuffer buffer; // Boards not yet spilled
+    private final Path spillDirectory;
+    private FileChannel spill; // Null until the buffer first fills
+    private Path spillPath;
+    private long size;
+    private long spilledBoards;
+
+    // bufferBytes is rounded down to whole boards, but is always room for at least one
+    public StateFrontier(int bufferBytes, Path spillDirectory) {
+        buffer = ByteBuffer.allocateDirect(Math.max(Long.BYTES, bufferBytes / Long.BYTES * Long.BYTES)).order(ByteOrder.nativeOrder());
+        this.spillDirectory = spillDirectory;
+    }
+
+    public void add(long board) throws IOException {
+        if (!buffer.hasRemaining()) {
+            spillBuffer();
+        }
+        buffer.putLong(board);
+        size++;
+    }
+
+    private void spillBuffer() throws IOException {
+        if (spill == null) {
+            spillPath = Files.createTempFile(spillDirectory, "frontier", ".bin");
+            spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            spill.write(buffer);
+        }
+        spilledBoards += buffer.limit() / Long.BYTES;
+        buffer.clear();
+    }
+
+    // Every board in the order added: the spilled ones are read back through the same buffer first,
+    // so the unspilled tail is pushed to the file before reading starts
+    public void forEach(LongConsumer action) throws IOException {
+        if (spill == null) {
+            for (int i = 0, end = buffer.position(); i < end; i += Long.BYTES) {
+                action.accept(buffer.getLong(i));
+            }
+            return;
+        }
+        spillBuffer();
+        long position = 0;
+        long end = spilledBoards * Long.BYTES;
+        while (position < end) {
+            buffer.clear();
+            while (buffer.hasRemaining() && position < end) {
+                int read = spill.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Frontier file ended early: " + spillPath);
+                }
+                position += read;
+            }
+            buffer.flip();
+            for (int i = 0, limit = buffer.limit() / Long.BYTES * Long.BYTES; i < limit; i += Long.BYTES) {
+                action.accept(buffer.getLong(i));
+            }
+        }
+        buffer.clear();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // Boards written to disk so far
+    public long getSpilledBoards() {
+        return spilledBoards;
+    }
+
+    // Delete the spill file and free the buffer, the frontier must not be used afterwards
+    public void close() throws IOException {
+        DirectBuffers.release(buffer);
+        if (spill != null) {
+            spill.close(); // Deletes the file
+        }
+    }
+}
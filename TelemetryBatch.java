@@ -0,0 +1,322 @@
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Up to ROWS moves of telemetry held column by column, filled by a TelemetryWriter.Recorder and
+// decoded again by TelemetryReader
+// On disk a batch is one chunk: a header, then each stored column deflated on its own so a reader only
+// inflates the columns it asks for. Numbers are varints; game ids, move numbers and times are stored
+// as differences from the row before, which are nearly always tiny.
+// Chunk layout: int CHUNK_MAGIC, int length of the rest, int CRC32 of the rest, int rows, then per
+// stored column an int raw length and an int deflated length, then the deflated columns in order.
+// Boards are one exponent byte per cell, row-major, with the boards of all rows back to back: row i
+// takes sizes[i] * sizes[i] bytes. Only the board before each move is stored, XORed with the board
+// the previous row's move left (so within a game it is all zeros); the board after a move follows
+// from the one before, the direction and the spawn, and is worked out again when decoding.
+public class TelemetryBatch {
+    public static final int ROWS = 4096;
+    public static final int BOARD_BYTES = 256 * 1024; // Per board column, enough for 64 rows of 64x64 boards
+
+    // Column numbers, also the bits of a column mask
+    public static final int GAME = 0; // Game id, unique within a file
+    public static final int MOVE = 1; // Effective moves before this one in the game
+    public static final int TIME = 2; // Nanoseconds from the file's start time to the end of the move
+    public static final int DURATION = 3; // Nanoseconds spent in Game2048.move, spawn included
+    public static final int DIRECTION = 4; // BitBoard direction
+    public static final int POINTS = 5; // Score gained by the move
+    public static final int SPAWN_CELL = 6; // Cell (row * size + col) of the new tile, -1 if none
+    public static final int SPAWN_EXPONENT = 7; // 1 for a 2, 2 for a 4
+    public static final int SIZE = 8; // Board side length
+    public static final int BEFORE = 9; // Board before the move
+    public static final int AFTER = 10; // Board after the move and the spawn, derived rather than stored
+    public static final int COLUMNS = 11;
+    public static final int ALL_COLUMNS = (1 << COLUMNS) - 1;
+    static final int STORED_COLUMNS = 10; // Every column but AFTER
+
+    private static final int BOARD_COLUMNS = 1 << BEFORE | 1 << AFTER;
+    // Columns with long runs (ids, counters, XORed boards) get full deflate; the rest is short noisy
+    // numbers where string matching finds little, so they are only Huffman coded, which is much faster
+    private static final int RUN_COLUMNS = 1 << GAME | 1 << MOVE | 1 << SIZE | 1 << BEFORE;
+    // Columns that decoding the boards needs
+    private static final int BOARD_INPUTS = 1 << BEFORE | 1 << SIZE | 1 << DIRECTION | 1 << SPAWN_CELL | 1 << SPAWN_EXPONENT;
+
+    static final int CHUNK_MAGIC = 0x43484E4B; // "CHNK"
+    static final int CHUNK_HEADER_BYTES = 16 + 8 * STORED_COLUMNS; // Up to the first column
+    static final int NUMBER_COLUMN_BYTES = 10 * ROWS; // Largest varint column, the scratch size coders need
+
+    public final long[] games = new long[ROWS];
+    public final int[] moves = new int[ROWS];
+    public final long[] times = new long[ROWS];
+    public final long[] durations = new long[ROWS];
+    public final byte[] directions = new byte[ROWS];
+    public final int[] points = new int[ROWS];
+    public final int[] spawnCells = new int[ROWS];
+    public final byte[] spawnExponents = new byte[ROWS];
+    public final byte[] sizes = new byte[ROWS];
+    public final byte[] before = new byte[BOARD_BYTES];
+    public final byte[] after = new byte[BOARD_BYTES];
+    public int rows;
+    public int boardBytes; // Bytes used in before and after
+    long openedNanos; // When the recorder started filling it
+    private int[] line = new int[0]; // Scratch for slideLine
+
+    public void clear() {
+        rows = 0;
+        boardBytes = 0;
+    }
+
+    // Room for one more row with a board of the given size
+    boolean hasRoom(int size) {
+        return rows < ROWS && boardBytes + size * size <= BOARD_BYTES;
+    }
+
+    // Append the batch to out as one chunk, out must have maxChunkBytes() left; returns the raw column bytes
+    // The after boards are overwritten with the ones the moves give, the recorder never fills them
+    long encode(ByteBuffer out, Deflater deflater, byte[] scratch, byte[] boardScratch) {
+        int start = out.position();
+        out.position(start + CHUNK_HEADER_BYTES);
+        long rawTotal = 0;
+        for (int column = 0; column < STORED_COLUMNS; column++) {
+            byte[] raw;
+            int rawLength;
+            switch (column) {
+                case DIRECTION: raw = directions; rawLength = rows; break;
+                case SPAWN_EXPONENT: raw = spawnExponents; rawLength = rows; break;
+                case SIZE: raw = sizes; rawLength = rows; break;
+                case BEFORE: raw = boardScratch; rawLength = boardBytes; xorBoards(boardScratch); break;
+                default: raw = scratch; rawLength = encodeNumbers(column, scratch); break;
+            }
+            int columnStart = out.position();
+            deflater.reset();
+            deflater.setStrategy((RUN_COLUMNS & 1 << column) != 0 ? Deflater.DEFAULT_STRATEGY : Deflater.HUFFMAN_ONLY);
+            deflater.setInput(raw, 0, rawLength);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflater.deflate(out);
+            }
+            out.putInt(start + 16 + 8 * column, rawLength);
+            out.putInt(start + 20 + 8 * column, out.position() - columnStart);
+            rawTotal += rawLength;
+        }
+        int end = out.position();
+        out.putInt(start, CHUNK_MAGIC);
+        out.putInt(start + 4, end - start - 12);
+        out.putInt(start + 12, rows);
+        CRC32 crc = new CRC32();
+        crc.update(out.duplicate().position(start + 12).limit(end));
+        out.putInt(start + 8, (int) crc.getValue());
+        return rawTotal;
+    }
+
+    // Worst case size of an encoded chunk: deflate adds at most a few bytes per 16 KiB stored
+    static int maxChunkBytes() {
+        int raw = 3 * ROWS + BOARD_BYTES + 6 * NUMBER_COLUMN_BYTES;
+        return CHUNK_HEADER_BYTES + raw + raw / 1000 + 64 * STORED_COLUMNS;
+    }
+
+    // Each before board XORed with the board the previous row's move left, when the sizes match
+    private void xorBoards(byte[] out) {
+        int offset = 0;
+        for (int row = 0; row < rows; row++) {
+            int size = sizes[row];
+            int cells = size * size;
+            if (row > 0 && sizes[row - 1] == size) {
+                for (int i = 0; i < cells; i++) {
+                    out[offset + i] = (byte) (before[offset + i] ^ after[offset - cells + i]);
+                }
+            } else {
+                System.arraycopy(before, offset, out, offset, cells);
+            }
+            applyMove(row, offset, size);
+            offset += cells;
+        }
+    }
+
+    // Fill in the row's after board: slide its before board the way Game2048 does, then add the spawn
+    private void applyMove(int row, int offset, int size) {
+        int spawn = spawnCells[row];
+        if (size == 4 && applyMove4(row, offset)) {
+            return;
+        }
+        if (line.length != size) {
+            line = new int[size];
+        }
+        int cells = size * size;
+        System.arraycopy(before, offset, after, offset, cells);
+        int direction = directions[row];
+        boolean vertical = direction == BitBoard.UP || direction == BitBoard.DOWN;
+        boolean backwards = direction == BitBoard.DOWN || direction == BitBoard.RIGHT;
+        for (int l = 0; l < size; l++) {
+            for (int p = 0; p < size; p++) {
+                line[p] = before[offset + cell(size, l, backwards ? size - 1 - p : p, vertical)];
+                line[p] = line[p] == 0 ? 0 : 1 << line[p];
+            }
+            Game2048.slideLine(line);
+            for (int p = 0; p < size; p++) {
+                after[offset + cell(size, l, backwards ? size - 1 - p : p, vertical)] = (byte) BitBoard.exponentOf(line[p]);
+            }
+        }
+        if (spawn >= 0 && spawn < cells) {
+            after[offset + spawn] = spawnExponents[row];
+        }
+    }
+
+    // Same for a 4x4 board on the BitBoard tables, false if a tile is 32768 or more: the tables leave
+    // a line alone rather than merge two 32768s, where the game made 65536
+    private boolean applyMove4(int row, int offset) {
+        long board = 0;
+        for (int i = 0; i < 16; i++) {
+            int exponent = before[offset + i];
+            if ((exponent & ~0xF) != 0 || exponent == 15) {
+                return false;
+            }
+            board |= (long) exponent << (4 * i);
+        }
+        long moved = BitBoard.move(board, directions[row] & 3);
+        for (int i = 0; i < 16; i++) {
+            after[offset + i] = (byte) ((moved >>> (4 * i)) & 0xF);
+        }
+        int spawn = spawnCells[row];
+        if (spawn >= 0 && spawn < 16) {
+            after[offset + spawn] = spawnExponents[row];
+        }
+        return true;
+    }
+
+    // Cell index of position p along line l, lines are columns when vertical
+    private static int cell(int size, int l, int p, boolean vertical) {
+        return vertical ? p * size + l : l * size + p;
+    }
+
+    // Varints of one numeric column, differences for the running ones
+    private int encodeNumbers(int column, byte[] out) {
+        int length = 0;
+        long previous = 0;
+        for (int row = 0; row < rows; row++) {
+            long value;
+            switch (column) {
+                case GAME: value = zigZag(games[row] - previous); previous = games[row]; break;
+                case MOVE: value = zigZag(moves[row] - previous); previous = moves[row]; break;
+                case TIME: value = zigZag(times[row] - previous); previous = times[row]; break;
+                case DURATION: value = durations[row]; break;
+                case POINTS: value = points[row]; break;
+                default: value = spawnCells[row] + 1; break; // SPAWN_CELL, -1 becomes 0
+            }
+            while ((value & ~0x7FL) != 0) {
+                out[length++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            out[length++] = (byte) value;
+        }
+        return length;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    // Fill the batch from one chunk (its rows field onwards), inflating only the columns in mask and
+    // the ones they are worked out from; the other columns keep whatever they held
+    void decode(ByteBuffer chunk, int mask, Inflater inflater, byte[] scratch) throws DataFormatException {
+        if ((mask & BOARD_COLUMNS) != 0) {
+            mask |= BOARD_INPUTS;
+        }
+        int base = chunk.position();
+        rows = chunk.getInt(base);
+        if (rows < 0 || rows > ROWS) {
+            throw new DataFormatException("Bad row count " + rows);
+        }
+        int offset = base + 4 + 8 * STORED_COLUMNS;
+        for (int column = 0; column < STORED_COLUMNS; column++) {
+            int rawLength = chunk.getInt(base + 4 + 8 * column);
+            int deflatedLength = chunk.getInt(base + 8 + 8 * column);
+            if ((mask & 1 << column) != 0) {
+                byte[] raw;
+                switch (column) {
+                    case DIRECTION: raw = directions; break;
+                    case SPAWN_EXPONENT: raw = spawnExponents; break;
+                    case SIZE: raw = sizes; break;
+                    case BEFORE: raw = before; break;
+                    default: raw = scratch; break;
+                }
+                if (rawLength < 0 || rawLength > raw.length || deflatedLength < 0 || offset + deflatedLength > chunk.limit()) {
+                    throw new DataFormatException("Bad lengths for column " + column);
+                }
+                inflater.reset();
+                inflater.setInput(chunk.duplicate().position(offset).limit(offset + deflatedLength));
+                int read = 0;
+                while (read < rawLength && !inflater.finished()) {
+                    int n = inflater.inflate(raw, read, rawLength - read);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if (read != rawLength) {
+                    throw new DataFormatException("Column " + column + " inflated to " + read + " of " + rawLength + " bytes");
+                }
+                if (raw == scratch) {
+                    decodeNumbers(column, scratch, rawLength);
+                }
+            }
+            if (column == BEFORE) {
+                boardBytes = rawLength;
+            }
+            offset += deflatedLength;
+        }
+        if ((mask & BOARD_COLUMNS) != 0) {
+            restoreBoards();
+        }
+    }
+
+    // Undo xorBoards row by row, working out each after board as the next row needs it
+    private void restoreBoards() throws DataFormatException {
+        int offset = 0;
+        for (int row = 0; row < rows; row++) {
+            int size = sizes[row];
+            int cells = size * size;
+            if (size < 1 || offset + cells > boardBytes) {
+                throw new DataFormatException("Boards end inside row " + row);
+            }
+            if (row > 0 && sizes[row - 1] == size) {
+                for (int i = 0; i < cells; i++) {
+                    before[offset + i] ^= after[offset - cells + i];
+                }
+            }
+            applyMove(row, offset, size);
+            offset += cells;
+        }
+    }
+
+    private void decodeNumbers(int column, byte[] in, int length) throws DataFormatException {
+        int position = 0;
+        long previous = 0;
+        for (int row = 0; row < rows; row++) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (position == length || shift > 63) {
+                    throw new DataFormatException("Column " + column + " ends inside row " + row);
+                }
+                b = in[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            switch (column) {
+                case GAME: previous += unZigZag(value); games[row] = previous; break;
+                case MOVE: previous += unZigZag(value); moves[row] = (int) previous; break;
+                case TIME: previous += unZigZag(value); times[row] = previous; break;
+                case DURATION: durations[row] = value; break;
+                case POINTS: points[row] = (int) value; break;
+                default: spawnCells[row] = (int) value - 1; break;
+            }
+        }
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
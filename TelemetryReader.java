@@ -0,0 +1,179 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.BitSet;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Scans a file written by TelemetryWriter through memory-mapped windows, so files of many GiB are read
+// without copying them onto the heap; chunks are checked against their CRC and decoded into one reused
+// TelemetryBatch, inflating only the columns asked for
+// Usage: java Game2048 --telemetry-scan FILE [--boards]
+public class TelemetryReader implements Closeable {
+    private static final long WINDOW_BYTES = 1L << 30; // Mapped at a time, always ends on a chunk boundary
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long startMillis;
+
+    private TelemetryReader(Path path, FileChannel channel, long startMillis) {
+        this.path = path;
+        this.channel = channel;
+        this.startMillis = startMillis;
+    }
+
+    public static TelemetryReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(TelemetryWriter.HEADER_BYTES);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+        }
+        header.flip();
+        if (header.remaining() < TelemetryWriter.HEADER_BYTES || header.getInt() != TelemetryWriter.MAGIC
+                || header.getInt() != TelemetryWriter.VERSION) {
+            channel.close();
+            throw new IOException("Not a telemetry file: " + path);
+        }
+        return new TelemetryReader(path, channel, header.getLong());
+    }
+
+    // Wall-clock milliseconds where the TIME column starts
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    // Decode every chunk in turn into the same batch and pass it to action; columns outside mask
+    // (a set of 1 << TelemetryBatch column bits) are left undecoded. Returns the number of rows.
+    // A chunk cut short at the end of the file (the writer was killed) ends the scan quietly.
+    public long forEachChunk(int mask, Consumer<TelemetryBatch> action) throws IOException {
+        TelemetryBatch batch = new TelemetryBatch();
+        Inflater inflater = new Inflater();
+        byte[] scratch = new byte[TelemetryBatch.NUMBER_COLUMN_BYTES];
+        CRC32 crc = new CRC32();
+        long size = channel.size();
+        long position = TelemetryWriter.HEADER_BYTES;
+        long windowStart = 0;
+        MappedByteBuffer window = null;
+        long rows = 0;
+        try {
+            while (position + 12 <= size) {
+                if (window == null || position + 12 > windowStart + window.capacity()) {
+                    window = map(position, size);
+                    windowStart = position;
+                }
+                int at = (int) (position - windowStart);
+                if (window.getInt(at) != TelemetryBatch.CHUNK_MAGIC) {
+                    throw new IOException("Damaged chunk at byte " + position + " of " + path);
+                }
+                int length = window.getInt(at + 4);
+                long end = position + 12 + length;
+                if (length < TelemetryBatch.CHUNK_HEADER_BYTES - 12 || end > size) {
+                    System.err.println("Telemetry: ignoring " + (size - position) + " bytes of unfinished chunk at the end of " + path);
+                    break;
+                }
+                if (end > windowStart + window.capacity()) {
+                    window = map(position, size);
+                    windowStart = position;
+                    at = 0;
+                }
+                ByteBuffer chunk = window.duplicate().position(at + 12).limit(at + 12 + length);
+                crc.reset();
+                crc.update(chunk.duplicate());
+                if ((int) crc.getValue() != window.getInt(at + 8)) {
+                    throw new IOException("Checksum mismatch in chunk at byte " + position + " of " + path);
+                }
+                try {
+                    batch.decode(chunk, mask, inflater, scratch);
+                } catch (DataFormatException e) {
+                    throw new IOException("Bad chunk at byte " + position + " of " + path + ": " + e.getMessage(), e);
+                }
+                action.accept(batch);
+                rows += batch.rows;
+                position = end;
+            }
+        } finally {
+            inflater.end();
+        }
+        return rows;
+    }
+
+    private MappedByteBuffer map(long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Print a summary of a telemetry file and how fast it was scanned
+    public static void main(String[] args) {
+        Path path = null;
+        boolean boards = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--telemetry-scan":
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        path = Paths.get(args[++i]);
+                    }
+                    break;
+                case "--boards": boards = true; break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: --telemetry-scan FILE [--boards]");
+                    return;
+            }
+        }
+        if (path == null) {
+            System.err.println("Usage: --telemetry-scan FILE [--boards]");
+            return;
+        }
+        int mask = TelemetryBatch.ALL_COLUMNS;
+        if (!boards) {
+            mask &= ~(1 << TelemetryBatch.BEFORE | 1 << TelemetryBatch.AFTER);
+        }
+        BitSet games = new BitSet();
+        long[] directions = new long[4];
+        long[] sums = new long[4]; // Points, duration nanos, 4 spawns, chunks
+        int[] maxExponent = new int[1];
+        long start = System.nanoTime();
+        try (TelemetryReader reader = open(path)) {
+            boolean withBoards = boards;
+            long rows = reader.forEachChunk(mask, batch -> {
+                for (int row = 0; row < batch.rows; row++) {
+                    games.set((int) batch.games[row]);
+                    directions[batch.directions[row] & 3]++;
+                    sums[0] += batch.points[row];
+                    sums[1] += batch.durations[row];
+                    if (batch.spawnExponents[row] == 2) {
+                        sums[2]++;
+                    }
+                }
+                if (withBoards) {
+                    for (int i = 0; i < batch.boardBytes; i++) {
+                        maxExponent[0] = Math.max(maxExponent[0], batch.after[i]);
+                    }
+                }
+                sums[3]++;
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long bytes = reader.channel.size();
+            System.out.printf("%s: %,d moves in %,d games, %,d chunks, %,d bytes (%.1f bytes/move), started %tF %<tT%n",
+                    path, rows, games.cardinality(), sums[3], bytes, (double) bytes / Math.max(1, rows), reader.getStartMillis());
+            System.out.printf("Directions: up %,d, down %,d, left %,d, right %,d%n", directions[0], directions[1], directions[2], directions[3]);
+            if (rows > 0) {
+                System.out.printf("Mean points per move %.2f, mean move time %.0f ns, 4 spawned %.1f%% of the time%n",
+                        (double) sums[0] / rows, (double) sums[1] / rows, 100.0 * sums[2] / rows);
+            }
+            if (boards) {
+                System.out.println("Largest tile: " + (1 << maxExponent[0]));
+            }
+            System.out.printf("Scanned in %.3f s: %,.0f moves/sec, %.1f MiB/s%n", seconds, rows / seconds, bytes / seconds / (1 << 20));
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Cannot read telemetry: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+// Streams per-move telemetry to a file of columnar, deflated chunks (see TelemetryBatch)
+// Each game thread records through its own Recorder, which fills a batch in plain arrays: a move
+// costs a few array stores and a copy of the board's exponents before it (the board after it is
+// worked out by the writer). Full batches go to a writer thread
+// that encodes and writes them through a FileChannel, then hands them back. There is a fixed pool of
+// batches; when the writer falls behind and the pool runs dry, a lossy writer drops moves (counted)
+// so gameplay never waits, while a lossless one makes the recorder wait, for batch runs.
+// File layout: int MAGIC, int VERSION, long wall-clock milliseconds at open (the zero of the TIME
+// column), then chunks until the end of the file.
+public class TelemetryWriter implements Closeable {
+    static final int MAGIC = 0x3254454C; // "2TEL"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    private static final int BATCHES = 8; // Batches in the pool, at most this many wait for the writer
+    private static final long FLUSH_NANOS = TimeUnit.SECONDS.toNanos(1); // Oldest a part-filled batch gets
+    private static final TelemetryBatch CLOSE = new TelemetryBatch(); // Tells the writer thread to stop
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean lossless;
+    private final long startNanos;
+    private final BlockingQueue<TelemetryBatch> free = new ArrayBlockingQueue<>(BATCHES);
+    private final BlockingQueue<TelemetryBatch> full = new ArrayBlockingQueue<>(BATCHES + 1);
+    private final Thread writer;
+    private final AtomicLong nextGame = new AtomicLong();
+    private final LongAdder droppedMoves = new LongAdder();
+    private volatile long writtenMoves; // Writer thread only
+    private volatile long writtenBytes;
+    private volatile long rawBytes; // Column bytes before deflating
+    private volatile IOException writeError;
+    private boolean closed;
+
+    private TelemetryWriter(Path path, FileChannel channel, boolean lossless) {
+        this.path = path;
+        this.channel = channel;
+        this.lossless = lossless;
+        this.startNanos = System.nanoTime();
+        for (int i = 0; i < BATCHES; i++) {
+            free.add(new TelemetryBatch());
+        }
+        writer = new Thread(this::writeLoop, "telemetry-writer");
+        writer.setDaemon(true);
+    }
+
+    // Start a new telemetry file at path, replacing any old one
+    public static TelemetryWriter open(Path path, boolean lossless) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        TelemetryWriter writer = new TelemetryWriter(path, channel, lossless);
+        writer.writer.start();
+        return writer;
+    }
+
+    // A recorder for one thread's games
+    public Recorder newRecorder() {
+        return new Recorder();
+    }
+
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(TelemetryBatch.maxChunkBytes());
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] scratch = new byte[TelemetryBatch.NUMBER_COLUMN_BYTES];
+        byte[] boardScratch = new byte[TelemetryBatch.BOARD_BYTES];
+        try {
+            while (true) {
+                TelemetryBatch batch = full.take();
+                if (batch == CLOSE) {
+                    break;
+                }
+                if (writeError == null) {
+                    try {
+                        buffer.clear();
+                        long raw = batch.encode(buffer, deflater, scratch, boardScratch);
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        writtenMoves += batch.rows;
+                        writtenBytes += buffer.limit();
+                        rawBytes += raw;
+                    } catch (IOException e) {
+                        writeError = e; // Keep returning batches so recorders never wait on a dead writer
+                        System.err.println("Telemetry: writing " + path + " failed, dropping the rest: " + e.getMessage());
+                    }
+                }
+                if (writeError != null) {
+                    droppedMoves.add(batch.rows);
+                }
+                batch.clear();
+                free.add(batch);
+            }
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            writeError = e;
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Write every batch handed over so far and close the file; recorders should flush first
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        full.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    public long getWrittenMoves() {
+        return writtenMoves;
+    }
+
+    public long getDroppedMoves() {
+        return droppedMoves.sum();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes + HEADER_BYTES;
+    }
+
+    // Size of the written columns before deflating
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    // Fills batches for one thread; not thread-safe, each game thread needs its own
+    public class Recorder {
+        private TelemetryBatch batch; // Null while the pool is empty (lossy writers only)
+        private long game = nextGame.getAndIncrement();
+        private int boardSize;
+        private boolean pending; // beginMove stored a board that endMove may complete
+
+        // Give the following moves a new game id
+        public void startGame() {
+            game = nextGame.getAndIncrement();
+        }
+
+        // Store the board about to be moved; a move that changes nothing simply never calls endMove
+        public void beginMove(int[][] grid) {
+            int size = grid.length;
+            pending = false;
+            if (batch != null && !batch.hasRoom(size)) {
+                flush();
+            }
+            if (batch == null && !acquire()) {
+                return;
+            }
+            storeBoard(grid, batch.before, batch.boardBytes);
+            boardSize = size;
+            pending = true;
+        }
+
+        // Complete the row begun by beginMove, grid is the board after the move and the spawn
+        public void endMove(int[][] grid, int moveNumber, int direction, int points, int spawnCell, long durationNanos) {
+            if (!pending) {
+                droppedMoves.increment();
+                return;
+            }
+            pending = false;
+            TelemetryBatch b = batch;
+            int row = b.rows;
+            long now = System.nanoTime();
+            b.games[row] = game;
+            b.moves[row] = moveNumber;
+            b.times[row] = now - startNanos;
+            b.durations[row] = durationNanos;
+            b.directions[row] = (byte) direction;
+            b.points[row] = points;
+            b.spawnCells[row] = spawnCell;
+            b.spawnExponents[row] = spawnCell < 0 ? 0 : (byte) BitBoard.exponentOf(grid[spawnCell / boardSize][spawnCell % boardSize]);
+            b.sizes[row] = (byte) boardSize;
+            b.boardBytes += boardSize * boardSize;
+            b.rows = row + 1;
+            if (now - b.openedNanos > FLUSH_NANOS) {
+                flush();
+            }
+        }
+
+        // A game is over: an interactive game may sit idle now, so its moves go to the writer at once;
+        // batch runs keep filling the batch, which compresses better
+        public void endGame() {
+            if (!lossless) {
+                flush();
+            }
+        }
+
+        // Hand the part-filled batch to the writer, e.g. when a thread has no more games to play
+        public void flush() {
+            pending = false;
+            if (batch != null && batch.rows > 0) {
+                full.add(batch); // Never full: only pool batches and CLOSE ever go in
+                batch = null;
+            }
+        }
+
+        private boolean acquire() {
+            if (lossless) {
+                try {
+                    batch = free.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            } else {
+                batch = free.poll();
+            }
+            if (batch == null) {
+                return false;
+            }
+            batch.openedNanos = System.nanoTime();
+            return true;
+        }
+
+        private void storeBoard(int[][] grid, byte[] out, int offset) {
+            for (int[] row : grid) {
+                for (int value : row) {
+                    out[offset++] = (byte) BitBoard.exponentOf(value);
+                }
+            }
+        }
+    }
+}
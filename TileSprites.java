@@ -0,0 +1,70 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import javax.swing.UIManager;
+
+// Cache of pre-rendered tile images (background, border, centred number) for one cell size
+// Shared by the board views so a tile is drawn with a single drawImage call
+public class TileSprites {
+    public static final int MAX_EXPONENT = 31; // Every power of two an int can hold, large boards go past 131072
+    private static final int FONT_SIZE = 34;
+    private static final String[] TILE_TEXT = new String[MAX_EXPONENT];
+
+    static {
+        for (int e = 1; e < MAX_EXPONENT; e++) {
+            TILE_TEXT[e] = String.valueOf(1 << e);
+        }
+    }
+
+    private final BufferedImage[] sprites = new BufferedImage[MAX_EXPONENT]; // Indexed by tile exponent
+    private int width;
+    private int height;
+
+    // Switch to a new cell size, dropping the old images (they are rebuilt on first use)
+    public void resize(int width, int height) {
+        if (width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            java.util.Arrays.fill(sprites, null);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Tile image for a value at the current size, rendered on first use
+    public BufferedImage sprite(int value, GraphicsConfiguration configuration) {
+        int exponent = BitBoard.exponentOf(value);
+        BufferedImage sprite = sprites[exponent];
+        if (sprite == null) {
+            sprite = renderTile(value, exponent, configuration);
+            sprites[exponent] = sprite;
+        }
+        return sprite;
+    }
+
+    private BufferedImage renderTile(int value, int exponent, GraphicsConfiguration configuration) {
+        BufferedImage image = configuration != null
+                ? configuration.createCompatibleImage(width, height)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(value == 0 ? Color.LIGHT_GRAY : Game2048.tileColor(value));
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.BLACK);
+        g.drawRect(0, 0, width - 1, height - 1);
+        if (value != 0) {
+            String text = TILE_TEXT[exponent];
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(new Font("Arial", Font.BOLD, Math.max(8, Math.min(FONT_SIZE, height / 2))));
+            g.setColor(UIManager.getColor("Label.foreground"));
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(text, (width - metrics.stringWidth(text)) / 2, (height - metrics.getHeight()) / 2 + metrics.getAscent());
+        }
+        g.dispose();
+        return image;
+    }
+}
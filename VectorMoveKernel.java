@@ -0,0 +1,80 @@
+import jdk.incubator.vector.*;
+
+// Vector API form of BitBoard.moveAll: boards go through in lanes of the platform's preferred long vector
+// One line (row, or column after an in-register transpose) of every lane is cut out with shifts and
+// masks, and its result and points are gathered from the same tables the scalar code reads, so the
+// output is identical. Only BitBoard calls this, and only once it has checked that the
+// jdk.incubator.vector module is there (run with --add-modules jdk.incubator.vector).
+final class VectorMoveKernel {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    // Same lane count as LONGS, for the gathered points and the gather indexes
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, VectorShape.forBitSize(LONGS.vectorBitSize() / 2));
+    private static final long[] ROW_LEFT = widen(BitBoard.ROW_LEFT); // Gathers read long[] or int[], not char[]
+    private static final long[] ROW_RIGHT = widen(BitBoard.ROW_RIGHT);
+
+    private VectorMoveKernel() {
+    }
+
+    // True if vectors hold more than one board here; with one lane the scalar loop is as good
+    static boolean isUseful() {
+        return LONGS.length() > 1;
+    }
+
+    // Scratch for the gather indexes, one per moveAll call so threads never share it
+    static int[] newIndex() {
+        return new int[INTS.length()];
+    }
+
+    // BitBoard.slide over [start, stop) within one word of changed, whole vectors first and the
+    // remaining boards through the scalar loop
+    static long slide(long[] boards, int start, int stop, int direction, long[] results, int[] scores, int[] index) {
+        long[] table;
+        int[] points;
+        int step; // Shift from one line's result to the next
+        boolean columns = direction == BitBoard.UP || direction == BitBoard.DOWN;
+        switch (direction) {
+            case BitBoard.UP: table = BitBoard.COL_UP; points = BitBoard.SCORE_LEFT; step = 4; break;
+            case BitBoard.DOWN: table = BitBoard.COL_DOWN; points = BitBoard.SCORE_RIGHT; step = 4; break;
+            case BitBoard.LEFT: table = ROW_LEFT; points = BitBoard.SCORE_LEFT; step = 16; break;
+            case BitBoard.RIGHT: table = ROW_RIGHT; points = BitBoard.SCORE_RIGHT; step = 16; break;
+            default: throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+        int lanes = LONGS.length();
+        long bits = 0;
+        int i = start;
+        for (; i + lanes <= stop; i += lanes) {
+            LongVector board = LongVector.fromArray(LONGS, boards, i);
+            LongVector lines = columns ? transpose(board) : board;
+            LongVector result = LongVector.zero(LONGS);
+            IntVector score = IntVector.zero(INTS);
+            for (int line = 0; line < 4; line++) {
+                LongVector key = lines.lanewise(VectorOperators.LSHR, 16 * line).and(0xFFFFL);
+                ((IntVector) key.castShape(INTS, 0)).intoArray(index, 0);
+                result = result.or(LongVector.fromArray(LONGS, table, 0, index, 0).lanewise(VectorOperators.LSHL, step * line));
+                score = score.add(IntVector.fromArray(INTS, points, 0, index, 0));
+            }
+            result.intoArray(results, i);
+            score.intoArray(scores, i);
+            bits |= result.compare(VectorOperators.NE, board).toLong() << i;
+        }
+        return i < stop ? bits | BitBoard.slide(boards, i, stop, direction, results, scores) : bits;
+    }
+
+    // BitBoard.transpose on every lane
+    private static LongVector transpose(LongVector x) {
+        LongVector a = x.and(0xF0F00F0FF0F00F0FL)
+                .or(x.and(0x0000F0F00000F0F0L).lanewise(VectorOperators.LSHL, 12))
+                .or(x.and(0x0F0F00000F0F0000L).lanewise(VectorOperators.LSHR, 12));
+        return a.and(0xFF00FF0000FF00FFL)
+                .or(a.and(0x00FF00FF00000000L).lanewise(VectorOperators.LSHR, 24))
+                .or(a.and(0x00000000FF00FF00L).lanewise(VectorOperators.LSHL, 24));
+    }
+
+    private static long[] widen(char[] rows) {
+        long[] wide = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            wide[i] = rows[i];
+        }
+        return wide;
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// BitBoard.moveAll on many played boards against the per-board loops it replaces, in ns per board moved
+// Forks load the Vector API, so moveAll runs VectorMoveKernel; moveAllScalar turns it off
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class BatchMoveBenchmark {
+    private static final int BATCH_BOARDS = 4096; // Each op moves all of them in all four directions
+
+    private long[] batchBoards;
+    private final long[] batchResults = new long[BATCH_BOARDS];
+    private final int[] batchScores = new int[BATCH_BOARDS];
+    private final long[] batchChanged = new long[BATCH_BOARDS / 64];
+    private final int[][] cells = new int[4][4];
+    private Object game;
+
+    @Setup(Level.Trial)
+    public void loadBoards() {
+        batchBoards = Corpus.playedBoards(BATCH_BOARDS);
+        game = Core.newGame(2048);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4 * BATCH_BOARDS)
+    public long moveAll() {
+        long moved = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            moved += Core.moveAll(batchBoards, 0, BATCH_BOARDS, direction, batchResults, batchScores, batchChanged);
+        }
+        return moved;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4 * BATCH_BOARDS)
+    @Fork(value = 2, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector", "-Dbitboard.vectors=false"})
+    public long moveAllScalar() {
+        return moveAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4 * BATCH_BOARDS)
+    public long bitBoardLoop() {
+        long moved = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            for (int b = 0; b < BATCH_BOARDS; b++) {
+                long board = batchBoards[b];
+                batchResults[b] = Core.move(board, direction);
+                batchScores[b] = Core.moveScore(board, direction);
+                moved += batchResults[b] != board ? 1 : 0;
+            }
+        }
+        return moved;
+    }
+
+    // The int[][] engine has to be loaded with each board before moving it, so this includes setGrid
+    @Benchmark
+    @OperationsPerInvocation(4 * BATCH_BOARDS)
+    public long game2048Loop() {
+        long moved = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            for (int b = 0; b < BATCH_BOARDS; b++) {
+                Core.toGrid(batchBoards[b], cells);
+                Core.setGrid(game, cells);
+                moved += Core.move(game, direction) ? 1 : 0;
+            }
+        }
+        return moved;
+    }
+}
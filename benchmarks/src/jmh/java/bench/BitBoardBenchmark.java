@@ -0,0 +1,36 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Single moves of the packed 64-bit engine on the fixed corpus
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BitBoardBenchmark {
+    @Param({"sparse", "dense", "nearGameOver"})
+    public String corpus;
+
+    private long[] boards;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void loadBoards() {
+        boards = Corpus.named(corpus);
+    }
+
+    @Benchmark
+    public long move() {
+        int i = next++;
+        return Core.move(boards[i & Corpus.MASK], i & 3);
+    }
+
+    @Benchmark
+    public int moveScore() {
+        int i = next++;
+        return Core.moveScore(boards[i & Corpus.MASK], i & 3);
+    }
+}
@@ -0,0 +1,256 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Map;
+
+// Calls into the game classes, which live in the default package: a named package cannot import them,
+// and JMH refuses to generate code for benchmarks in the default package. Each method is reached
+// through a static final MethodHandle, which the JIT treats as a constant and inlines like a direct
+// call, so the bridge adds nothing to the measured time. Game objects are passed around as Object.
+final class Core {
+    private static final MethodHandle BITBOARD_MOVE = method("BitBoard", "move", long.class, int.class);
+    private static final MethodHandle BITBOARD_MOVE_SCORE = method("BitBoard", "moveScore", long.class, int.class);
+    private static final MethodHandle BITBOARD_MOVE_ALL = method("BitBoard", "moveAll",
+            long[].class, int.class, int.class, int.class, long[].class, int[].class, long[].class);
+    private static final MethodHandle BITBOARD_TO_GRID = method("BitBoard", "toGrid", long.class, int[][].class);
+    private static final MethodHandle BITBOARD_FROM_GRID = method("BitBoard", "fromGrid", int[][].class);
+    private static final MethodHandle GAME_MOVE = method("Game2048", "move", int.class);
+    private static final MethodHandle GAME_MOVE_UP = method("Game2048", "moveUp");
+    private static final MethodHandle GAME_MOVE_DOWN = method("Game2048", "moveDown");
+    private static final MethodHandle GAME_MOVE_LEFT = method("Game2048", "moveLeft");
+    private static final MethodHandle GAME_MOVE_RIGHT = method("Game2048", "moveRight");
+    private static final MethodHandle GAME_IS_GAME_OVER = method("Game2048", "isGameOver");
+    private static final MethodHandle GAME_UPDATE_GRID_LABELS = method("Game2048", "updateGridLabels");
+    private static final MethodHandle GAME_ADD_NEW_NUMBER = method("Game2048", "addNewNumber");
+    private static final MethodHandle GAME_SET_GRID = method("Game2048", "setGrid", int[][].class);
+    private static final MethodHandle GAME_GET_GRID = method("Game2048", "getGrid");
+    private static final MethodHandle GAME_RESET = method("Game2048", "resetGame");
+    private static final MethodHandle STORE_OPEN = method("ScoreStore", "open", String.class);
+    private static final MethodHandle STORE_RECORD = method("ScoreStore", "record", String.class, int.class);
+    private static final MethodHandle STORE_BEST_SCORES = method("ScoreStore", "bestScores");
+    private static final MethodHandle STORE_FLUSH = method("ScoreStore", "flush");
+    private static final MethodHandle STORE_CLOSE = method("ScoreStore", "close");
+
+    private Core() {
+    }
+
+    static long move(long board, int direction) {
+        try {
+            return (long) BITBOARD_MOVE.invokeExact(board, direction);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static int moveScore(long board, int direction) {
+        try {
+            return (int) BITBOARD_MOVE_SCORE.invokeExact(board, direction);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static int moveAll(long[] boards, int offset, int count, int direction, long[] results, int[] scores, long[] changed) {
+        try {
+            return (int) BITBOARD_MOVE_ALL.invokeExact(boards, offset, count, direction, results, scores, changed);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void toGrid(long board, int[][] grid) {
+        try {
+            BITBOARD_TO_GRID.invokeExact(board, grid);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static long fromGrid(int[][] grid) {
+        try {
+            return (long) BITBOARD_FROM_GRID.invokeExact(grid);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    // A headless 4x4 game with its grid panel built, so updateGridLabels has labels to update
+    static Object newGame(long seed) {
+        try {
+            Object random = Class.forName("GameRandom").getConstructor(long.class).newInstance(seed);
+            Constructor<?> constructor = Class.forName("Game2048").getDeclaredConstructor(random.getClass());
+            constructor.setAccessible(true);
+            Object game = constructor.newInstance(random);
+            Method createGridPanel = game.getClass().getDeclaredMethod("createGridPanel");
+            createGridPanel.setAccessible(true);
+            createGridPanel.invoke(game);
+            return game;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create a game", e);
+        }
+    }
+
+    static boolean move(Object game, int direction) {
+        try {
+            return (boolean) GAME_MOVE.invokeExact(game, direction);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static boolean moveUp(Object game) {
+        try {
+            return (boolean) GAME_MOVE_UP.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static boolean moveDown(Object game) {
+        try {
+            return (boolean) GAME_MOVE_DOWN.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static boolean moveLeft(Object game) {
+        try {
+            return (boolean) GAME_MOVE_LEFT.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static boolean moveRight(Object game) {
+        try {
+            return (boolean) GAME_MOVE_RIGHT.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static boolean isGameOver(Object game) {
+        try {
+            return (boolean) GAME_IS_GAME_OVER.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void updateGridLabels(Object game) {
+        try {
+            GAME_UPDATE_GRID_LABELS.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void addNewNumber(Object game) {
+        try {
+            GAME_ADD_NEW_NUMBER.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void setGrid(Object game, int[][] cells) {
+        try {
+            GAME_SET_GRID.invokeExact(game, cells);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static int[][] getGrid(Object game) {
+        try {
+            return (int[][]) GAME_GET_GRID.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void resetGame(Object game) {
+        try {
+            GAME_RESET.invokeExact(game);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static Object openScores(String path) {
+        try {
+            return (Object) STORE_OPEN.invokeExact(path);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void record(Object store, String player, int score) {
+        try {
+            STORE_RECORD.invokeExact(store, player, score);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Integer> bestScores(Object store) {
+        try {
+            return (Map<String, Integer>) STORE_BEST_SCORES.invokeExact(store);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void flush(Object store) {
+        try {
+            STORE_FLUSH.invokeExact(store);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    static void close(Object store) {
+        try {
+            STORE_CLOSE.invokeExact(store);
+        } catch (Throwable t) {
+            throw failure(t);
+        }
+    }
+
+    // Handle for a method of a default-package class; receivers and game-class results become Object
+    private static MethodHandle method(String className, String name, Class<?>... parameters) {
+        try {
+            Method method = Class.forName(className).getDeclaredMethod(name, parameters);
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            MethodType type = handle.type();
+            for (int i = 0; i < type.parameterCount(); i++) {
+                if (type.parameterType(i).getPackageName().isEmpty()) {
+                    type = type.changeParameterType(i, Object.class);
+                }
+            }
+            if (type.returnType().getPackageName().isEmpty()) {
+                type = type.changeReturnType(Object.class);
+            }
+            return handle.asType(type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static RuntimeException failure(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.util.SplittableRandom;
+
+// Reproducible board states in BitBoard encoding, captured once from seeded games. Do not regenerate:
+// every benchmark cycles through these, so numbers are comparable between commits.
+final class Corpus {
+    static final long[] SPARSE = { // 11 or more empty cells
+        0x0000000010001100L, 0x0010000000000010L, 0x0000000202020012L, 0x0000000050201102L,
+        0x0010000030002330L, 0x2000000000120002L, 0x1000000000001212L, 0x0200000200000000L,
+    };
+    static final long[] DENSE = { // 4 to 6 empty cells
+        0x1320240016501702L, 0x7210500224171530L, 0x0712004200264282L, 0x0348024603510017L,
+        0x4122120056003910L, 0x2524011600521029L, 0x1002002502389564L, 0x0110330076203134L,
+    };
+    static final long[] NEAR_GAME_OVER = { // At most one empty cell, still playable
+        0x7110432124171331L, 0x7301542225111247L, 0x7102642323313167L, 0x7131642324103167L,
+        0x2151144832272172L, 0x1039436731311342L, 0x1339416733311242L, 0x1492416713411242L,
+    };
+    static final int SIZE = 8; // Boards per corpus, a power of two so i & MASK cycles through them
+    static final int MASK = SIZE - 1;
+
+    private Corpus() {
+    }
+
+    // Corpus by the name used in the benchmarks' @Param lists
+    static long[] named(String name) {
+        switch (name) {
+            case "sparse": return SPARSE;
+            case "dense": return DENSE;
+            case "nearGameOver": return NEAR_GAME_OVER;
+            default: throw new IllegalArgumentException("Unknown corpus: " + name);
+        }
+    }
+
+    // The near game over boards with an empty cell, repeated to SIZE, where addNewNumber has a place to spawn
+    static long[] nearlyFull() {
+        long[] boards = new long[SIZE];
+        int count = 0;
+        for (int i = 0; count < SIZE; i = (i + 1) % NEAR_GAME_OVER.length) {
+            long board = NEAR_GAME_OVER[i];
+            for (int shift = 0; shift < 64; shift += 4) {
+                if (((board >>> shift) & 0xF) == 0) {
+                    boards[count++] = board;
+                    break;
+                }
+            }
+        }
+        return boards;
+    }
+
+    // Every board of seeded random games, far more distinct rows than the fixed corpus
+    static long[] playedBoards(int count) {
+        long[] boards = new long[count];
+        Object game = Core.newGame(2048);
+        SplittableRandom moves = new SplittableRandom(2048);
+        Core.resetGame(game);
+        for (int i = 0; i < count; i++) {
+            if (Core.isGameOver(game)) {
+                Core.resetGame(game);
+            }
+            int direction = moves.nextInt(4);
+            for (int k = 0; k < 4 && !Core.move(game, (direction + k) & 3); k++) {
+            }
+            boards[i] = Core.fromGrid(Core.getGrid(game));
+        }
+        return boards;
+    }
+}
@@ -0,0 +1,74 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// The Game2048 int[][] engine on the fixed corpus. The next corpus board is loaded into the game in a
+// per-invocation setup, so it is not part of the measured time; per-invocation setup costs a timestamp
+// pair per call, so compare these numbers with each other and with setGrid, not with the BitBoard ones.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GameBenchmark {
+    @Param({"sparse", "dense", "nearGameOver"})
+    public String corpus;
+
+    private long[] boards;
+    private final int[][] cells = new int[4][4];
+    private Object game;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createGame() {
+        boards = Corpus.named(corpus);
+        game = Core.newGame(2048);
+    }
+
+    @Setup(Level.Invocation)
+    public void loadNextBoard() {
+        Core.toGrid(boards[next++ & Corpus.MASK], cells);
+        Core.setGrid(game, cells);
+    }
+
+    // What loading a board costs, the setup above does this before every other benchmark here
+    @Benchmark
+    public int[][] setGrid() {
+        Core.toGrid(boards[next & Corpus.MASK], cells);
+        Core.setGrid(game, cells);
+        return cells;
+    }
+
+    @Benchmark
+    public boolean moveUp() {
+        return Core.moveUp(game);
+    }
+
+    @Benchmark
+    public boolean moveDown() {
+        return Core.moveDown(game);
+    }
+
+    @Benchmark
+    public boolean moveLeft() {
+        return Core.moveLeft(game);
+    }
+
+    @Benchmark
+    public boolean moveRight() {
+        return Core.moveRight(game);
+    }
+
+    @Benchmark
+    public boolean isGameOver() {
+        return Core.isGameOver(game);
+    }
+
+    @Benchmark
+    public Object updateGridLabels() {
+        Core.updateGridLabels(game);
+        return game;
+    }
+}
@@ -0,0 +1,86 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Loading and saving high scores through ScoreStore, on a log of many players written once per fork
+// to a temporary directory
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScoreStoreBenchmark {
+    private static final int HIGH_SCORE_ENTRIES = 100000;
+    private static final int PLAYERS = 1024; // Saved scores rotate through this many names
+
+    private File directory;
+    private String largeLog;
+    private Object store; // Open on a log of its own, for the save benchmarks
+    private final String[] players = new String[PLAYERS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void writeLogs() throws IOException {
+        directory = Files.createTempDirectory("bench2048").toFile();
+        largeLog = new File(directory, "highscores.log").getPath();
+        Object large = Core.openScores(largeLog);
+        for (int i = 0; i < HIGH_SCORE_ENTRIES; i++) {
+            Core.record(large, "player" + i, i * 7919 % 100000);
+        }
+        Core.close(large);
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = "player" + i;
+        }
+        store = Core.openScores(new File(directory, "saves.log").getPath());
+    }
+
+    // Write out the queue the queued benchmark built up, so one iteration's backlog is not the next's
+    @TearDown(Level.Iteration)
+    public void drainQueue() {
+        Core.flush(store);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLogs() {
+        Core.close(store);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public int loadHighScores() {
+        Object loaded = Core.openScores(largeLog);
+        int players = Core.bestScores(loaded).size();
+        Core.close(loaded);
+        return players;
+    }
+
+    // Queueing a score, which is all the game thread waits for
+    @Benchmark
+    public int saveHighScoresQueued() {
+        int i = next++;
+        Core.record(store, players[i & (PLAYERS - 1)], i & 0xFFFF);
+        return i;
+    }
+
+    // Until the score is synced to disk
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int saveHighScoresDurable() {
+        int i = next++;
+        Core.record(store, players[i & (PLAYERS - 1)], i & 0xFFFF);
+        Core.flush(store);
+        return i;
+    }
+}
@@ -0,0 +1,36 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// addNewNumber on nearly full boards, where finding the empty cell is the slow part. Each call loads
+// the next board in a per-invocation setup first, as in GameBenchmark.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SpawnBenchmark {
+    private final long[] boards = Corpus.nearlyFull();
+    private final int[][] cells = new int[4][4];
+    private Object game;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createGame() {
+        game = Core.newGame(2048);
+    }
+
+    @Setup(Level.Invocation)
+    public void loadNextBoard() {
+        Core.toGrid(boards[next++ & Corpus.MASK], cells);
+        Core.setGrid(game, cells);
+    }
+
+    @Benchmark
+    public Object addNewNumberNearlyFull() {
+        Core.addNewNumber(game);
+        return game;
+    }
+}
@@ -0,0 +1,134 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+// BitBoard against the game's own line rule, Game2048.slideLine, on random boards
+class BitBoardParityTest {
+    private static final int BOARDS = 1_000_000;
+
+    @Test
+    void moveMatchesSlideLine() {
+        Random random = new Random(2048);
+        int[][] grid = new int[4][4];
+        for (int b = 0; b < BOARDS; b++) {
+            long board = randomBoard(random);
+            for (int direction = 0; direction < 4; direction++) {
+                BitBoard.toGrid(board, grid);
+                int points = slide(grid, direction);
+                long expected = BitBoard.fromGrid(grid);
+                String where = String.format("board %016x direction %d", board, direction);
+                assertEquals(expected, BitBoard.move(board, direction), where);
+                assertEquals(points, BitBoard.moveScore(board, direction), where);
+            }
+        }
+    }
+
+    @Test
+    void moveAllMatchesMove() {
+        Random random = new Random(4096);
+        long[] boards = new long[1000];
+        for (int i = 0; i < boards.length; i++) {
+            boards[i] = randomBoard(random);
+        }
+        long[] results = new long[boards.length];
+        int[] scores = new int[boards.length];
+        long[] changed = new long[(boards.length + 63) / 64];
+        for (int direction = 0; direction < 4; direction++) {
+            int offset = 3; // Not on a word of changed
+            int moved = BitBoard.moveAll(boards, offset, boards.length - offset, direction, results, scores, changed);
+            int expectedMoved = 0;
+            for (int i = offset; i < boards.length; i++) {
+                long expected = BitBoard.move(boards[i], direction);
+                assertEquals(expected, results[i]);
+                assertEquals(BitBoard.moveScore(boards[i], direction), scores[i]);
+                assertEquals(expected != boards[i], BitBoard.isChanged(changed, i));
+                expectedMoved += expected != boards[i] ? 1 : 0;
+            }
+            assertEquals(expectedMoved, moved);
+        }
+    }
+
+    @Test
+    void twoLargestTilesDoNotMerge() {
+        long board = BitBoard.fromGrid(new int[][] {
+                {32768, 32768, 2, 0},
+                {4, 0, 4, 0},
+                {0, 0, 0, 0},
+                {0, 0, 0, 0}});
+        long moved = BitBoard.move(board, BitBoard.LEFT);
+        assertEquals(32768, BitBoard.tileAt(moved, 0, 0));
+        assertEquals(32768, BitBoard.tileAt(moved, 0, 1));
+        assertEquals(2, BitBoard.tileAt(moved, 0, 2));
+        assertEquals(8, BitBoard.tileAt(moved, 1, 0));
+        assertEquals(8, BitBoard.moveScore(board, BitBoard.LEFT)); // Only the row that moved scores
+    }
+
+    @Test
+    void fromGridRejectsTilesPastMaxTile() {
+        int[][] grid = new int[4][4];
+        grid[2][3] = BitBoard.MAX_TILE;
+        assertTrue(BitBoard.fits(grid));
+        assertEquals(grid[2][3], BitBoard.tileAt(BitBoard.fromGrid(grid), 2, 3));
+        grid[2][3] = BitBoard.MAX_TILE * 2;
+        assertFalse(BitBoard.fits(grid));
+        assertThrows(IllegalArgumentException.class, () -> BitBoard.fromGrid(grid));
+        assertFalse(BitBoard.fits(new int[3][3]));
+    }
+
+    // A quarter of the cells empty, the rest any exponent, with runs of equal tiles made likely
+    private static long randomBoard(Random random) {
+        long board = 0;
+        int previous = 0;
+        for (int cell = 0; cell < 16; cell++) {
+            int exponent = random.nextInt(4) == 0 ? 0 : random.nextInt(3) == 0 ? previous : 1 + random.nextInt(15);
+            board |= (long) exponent << (4 * cell);
+            previous = exponent;
+        }
+        return board;
+    }
+
+    // Slide the grid through Game2048.slideLine with BitBoard's documented limit: a line that would
+    // make a tile over MAX_TILE stays as it is and scores nothing
+    private static int slide(int[][] grid, int direction) {
+        int points = 0;
+        int[] line = new int[4];
+        for (int l = 0; l < 4; l++) {
+            for (int p = 0; p < 4; p++) {
+                line[p] = cell(grid, direction, l, p);
+            }
+            int linePoints = Game2048.slideLine(line);
+            boolean tooBig = false;
+            for (int value : line) {
+                tooBig |= value > BitBoard.MAX_TILE;
+            }
+            if (tooBig) {
+                continue;
+            }
+            points += linePoints;
+            for (int p = 0; p < 4; p++) {
+                setCell(grid, direction, l, p, line[p]);
+            }
+        }
+        return points;
+    }
+
+    // Position p of line l, position 0 being where tiles slide to
+    private static int cell(int[][] grid, int direction, int l, int p) {
+        switch (direction) {
+            case BitBoard.UP: return grid[p][l];
+            case BitBoard.DOWN: return grid[3 - p][l];
+            case BitBoard.LEFT: return grid[l][p];
+            default: return grid[l][3 - p];
+        }
+    }
+
+    private static void setCell(int[][] grid, int direction, int l, int p, int value) {
+        switch (direction) {
+            case BitBoard.UP: grid[p][l] = value; break;
+            case BitBoard.DOWN: grid[3 - p][l] = value; break;
+            case BitBoard.LEFT: grid[l][p] = value; break;
+            default: grid[l][3 - p] = value; break;
+        }
+    }
+}